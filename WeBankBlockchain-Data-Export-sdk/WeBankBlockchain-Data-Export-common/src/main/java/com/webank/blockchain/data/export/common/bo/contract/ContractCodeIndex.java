@@ -0,0 +1,125 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.export.common.bo.contract;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.webank.blockchain.data.export.common.constants.BinConstant;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * ContractCodeIndex matches the runtime code of a deployed contract to the registered contract binary which contains
+ * it, once the solidity metadata at the end of the code is stripped.
+ *
+ * <p>The runtime code is the last part of a contract binary, so both end with the same code before their metadata.
+ * The binaries are indexed by that tail at startup, and a code is only compared with the binaries sharing its tail,
+ * or with all of them if none does. A code not longer than the metadata hash only matches a binary equal to it. The
+ * match of each contract address is cached, unregistered contracts included.
+ */
+public class ContractCodeIndex {
+
+    private static final int TAIL_LENGTH = 128;
+    private static final int ADDRESS_CACHE_SIZE = 100000;
+
+    private final Map<String, Map.Entry<String, ContractDetail>> binaryIndex = new HashMap<>();
+    private final Map<String, List<String>> tailIndex = new HashMap<>();
+    private final Cache<String, Optional<Map.Entry<String, ContractDetail>>> addressCache =
+            CacheBuilder.newBuilder().maximumSize(ADDRESS_CACHE_SIZE).build();
+
+    public ContractCodeIndex(Map<String, ContractDetail> contractBinaryMap) {
+        for (Map.Entry<String, ContractDetail> entry : contractBinaryMap.entrySet()) {
+            String binary = normalize(entry.getKey());
+            binaryIndex.put(binary, entry);
+            tailIndex.computeIfAbsent(tail(stripMetadata(binary)), k -> new ArrayList<>()).add(binary);
+        }
+    }
+
+    /**
+     * @param code runtime code of a contract
+     * @return the entry of the registered binary containing the code, or null if none does
+     */
+    public Map.Entry<String, ContractDetail> match(String code) {
+        String normalized = normalize(code);
+        Map.Entry<String, ContractDetail> entry = binaryIndex.get(normalized);
+        if (entry != null || normalized.length() <= BinConstant.META_DATA_HASH_LENGTH) {
+            return entry;
+        }
+        String stripped = stripMetadata(normalized);
+        if (stripped.isEmpty()) {
+            return null;
+        }
+        List<String> candidates = tailIndex.get(tail(stripped));
+        if (candidates != null) {
+            for (String binary : candidates) {
+                if (binary.contains(stripped)) {
+                    return binaryIndex.get(binary);
+                }
+            }
+        }
+        for (Map.Entry<String, Map.Entry<String, ContractDetail>> candidate : binaryIndex.entrySet()) {
+            if (candidate.getKey().contains(stripped)) {
+                return candidate.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the cached match of the address, an empty optional if it matches no binary, or null if not cached
+     */
+    public Optional<Map.Entry<String, ContractDetail>> getCachedMatch(String contractAddress) {
+        return addressCache.getIfPresent(contractAddress.toLowerCase());
+    }
+
+    public void cacheMatch(String contractAddress, Map.Entry<String, ContractDetail> entry) {
+        addressCache.put(contractAddress.toLowerCase(), Optional.ofNullable(entry));
+    }
+
+    private static String normalize(String code) {
+        String normalized = code.toLowerCase();
+        return normalized.startsWith("0x") ? normalized.substring(2) : normalized;
+    }
+
+    /**
+     * solc appends the CBOR encoded metadata to the code, followed by its length in two bytes.
+     */
+    private static String stripMetadata(String code) {
+        if (code.length() < 4) {
+            return code;
+        }
+        int metadataLength;
+        try {
+            metadataLength = Integer.parseInt(code.substring(code.length() - 4), 16) * 2 + 4;
+        } catch (NumberFormatException e) {
+            return code;
+        }
+        if (metadataLength <= 4 || metadataLength > code.length()) {
+            return code;
+        }
+        String mapHeader = code.substring(code.length() - metadataLength, code.length() - metadataLength + 2);
+        if (mapHeader.compareTo("a1") < 0 || mapHeader.compareTo("a5") > 0) {
+            return code;
+        }
+        return code.substring(0, code.length() - metadataLength);
+    }
+
+    private static String tail(String code) {
+        return code.length() <= TAIL_LENGTH ? code : code.substring(code.length() - TAIL_LENGTH);
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.export.common.bo.contract;
+
+import cn.hutool.core.collection.CollectionUtil;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.fisco.bcos.sdk.abi.ABICodecException;
+import org.fisco.bcos.sdk.abi.EventEncoder;
+import org.fisco.bcos.sdk.abi.wrapper.ABICodecObject;
+import org.fisco.bcos.sdk.abi.wrapper.ABIDefinition;
+import org.fisco.bcos.sdk.abi.wrapper.ABIDefinitionFactory;
+import org.fisco.bcos.sdk.abi.wrapper.ABIObject;
+import org.fisco.bcos.sdk.abi.wrapper.ABIObjectFactory;
+import org.fisco.bcos.sdk.abi.wrapper.ContractABIDefinition;
+import org.fisco.bcos.sdk.crypto.CryptoSuite;
+import org.fisco.bcos.sdk.model.TransactionReceipt;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ContractCodec decodes the method inputs, method outputs and events of a contract with the ABI objects built once
+ * from its ABI, instead of parsing the ABI json for every transaction. The ABI objects are only templates, decoding
+ * copies them, so a codec is shared by all threads.
+ */
+@Slf4j
+public class ContractCodec {
+
+    private final ABICodecObject abiCodecObject = new ABICodecObject();
+
+    private ABIObject constructorInput;
+
+    /** @Fields methodInputs : key:method selector, value:ABIObject of the input params */
+    private final Map<String, ABIObject> methodInputs = new HashMap<>();
+
+    /** @Fields methodOutputs : key:method selector, value:ABIObject of the return values */
+    private final Map<String, ABIObject> methodOutputs = new HashMap<>();
+
+    /** @Fields eventDecoders : key:event topic, value:(EventMetaInfo, ABIObject of the data) of the exported events */
+    private final Map<String, List<Map.Entry<EventMetaInfo, ABIObject>>> eventDecoders = new HashMap<>();
+
+    @Data
+    @AllArgsConstructor
+    public static class MethodValues {
+        private List<Object> params;
+        private List<Object> returns;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class EventValues {
+        private EventMetaInfo eventMetaInfo;
+        private List<Object> params;
+    }
+
+    /**
+     * @param abi
+     * @param eventMetaInfos the events to export, the events turned off by generatedOff are not in it
+     * @param cryptoSuite
+     * @return codec
+     */
+    public static ContractCodec create(String abi, List<EventMetaInfo> eventMetaInfos, CryptoSuite cryptoSuite) {
+        return new ContractCodec(new ABIDefinitionFactory(cryptoSuite).loadABI(abi), eventMetaInfos, cryptoSuite);
+    }
+
+    private ContractCodec(ContractABIDefinition contractABIDefinition, List<EventMetaInfo> eventMetaInfos,
+                          CryptoSuite cryptoSuite) {
+        if (contractABIDefinition.getConstructor() != null) {
+            constructorInput = ABIObjectFactory.createInputObject(contractABIDefinition.getConstructor());
+        }
+        contractABIDefinition.getFunctions().values().forEach(definitions -> {
+            for (ABIDefinition definition : definitions) {
+                String selector = definition.getMethodId(cryptoSuite);
+                methodInputs.put(selector, ABIObjectFactory.createInputObject(definition));
+                methodOutputs.put(selector, ABIObjectFactory.createOutputObject(definition));
+            }
+        });
+        EventEncoder eventEncoder = new EventEncoder(cryptoSuite);
+        for (EventMetaInfo eventMetaInfo : eventMetaInfos) {
+            List<ABIDefinition> definitions = contractABIDefinition.getEvents().get(eventMetaInfo.getEventName());
+            if (CollectionUtil.isEmpty(definitions)) {
+                continue;
+            }
+            for (ABIDefinition definition : definitions) {
+                String topic = eventEncoder.buildEventSignature(definition.getMethodSignatureAsString());
+                eventDecoders.computeIfAbsent(topic, k -> new ArrayList<>()).add(new AbstractMap.SimpleImmutableEntry<>(
+                        eventMetaInfo, ABIObjectFactory.createEventInputObject(definition)));
+            }
+        }
+    }
+
+    /**
+     * @return first topics of the exported events
+     */
+    public Set<String> getEventTopics() {
+        return eventDecoders.keySet();
+    }
+
+    /**
+     * decode the params of a constructor, which follow the contract code in its input.
+     *
+     * @param input transaction input
+     * @param code contract code
+     * @return params
+     */
+    public List<Object> decodeConstructorInput(String input, String code) {
+        String lastCode = StringUtils.substring(code, code.length() - 32, code.length());
+        return abiCodecObject.decodeJavaObject(constructorInput, StringUtils.substringAfter(input, lastCode));
+    }
+
+    /**
+     * decode the input params and the return values of a method call at once, the overload is told by the selector.
+     *
+     * @param selector method id
+     * @param input transaction input
+     * @param output receipt output, or null if the return values are not needed
+     * @return params and returns, returns is null if output is null
+     * @throws ABICodecException if the selector is not a method of the contract
+     */
+    public MethodValues decodeMethod(String selector, String input, String output) throws ABICodecException {
+        ABIObject inputObject = methodInputs.get(selector);
+        if (inputObject == null) {
+            throw new ABICodecException("method " + selector + " is not in the ABI");
+        }
+        // remove methodId of input
+        List<Object> params = abiCodecObject.decodeJavaObject(inputObject, input.substring(10));
+        List<Object> returns = null;
+        if (output != null) {
+            returns = abiCodecObject.decodeJavaObject(methodOutputs.get(selector), output);
+        }
+        return new MethodValues(params, returns);
+    }
+
+    /**
+     * decode the data of the logs whose first topic is an exported event of the contract, the other logs are skipped
+     * without decoding.
+     *
+     * @param logs
+     * @return data of the exported events, in the order of the logs
+     */
+    public List<EventValues> decodeEvents(List<TransactionReceipt.Logs> logs) {
+        List<EventValues> events = new ArrayList<>();
+        if (CollectionUtil.isEmpty(logs)) {
+            return events;
+        }
+        for (TransactionReceipt.Logs eventLog : logs) {
+            if (CollectionUtil.isEmpty(eventLog.getTopics())) {
+                continue;
+            }
+            List<Map.Entry<EventMetaInfo, ABIObject>> decoders = eventDecoders.get(eventLog.getTopics().get(0));
+            if (decoders == null) {
+                continue;
+            }
+            for (Map.Entry<EventMetaInfo, ABIObject> decoder : decoders) {
+                try {
+                    List<Object> params = abiCodecObject.decodeJavaObject(decoder.getValue(), eventLog.getData());
+                    events.add(new EventValues(decoder.getKey(), params));
+                } catch (Exception e) {
+                    log.error(" exception in decodeEventToObject : {}", e.getMessage());
+                }
+            }
+        }
+        return events;
+    }
+}
@@ -36,5 +36,7 @@ public class ContractDetail {
 	private List<MethodMetaInfo> methodMetaInfos;
 	
 	private List<EventMetaInfo> eventMetaInfos;
+
+	private ContractCodec contractCodec;
 	
 }
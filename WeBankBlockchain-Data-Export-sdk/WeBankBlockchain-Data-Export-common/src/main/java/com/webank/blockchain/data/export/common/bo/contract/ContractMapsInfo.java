@@ -36,4 +36,10 @@ public class ContractMapsInfo {
     /** @Fields contractBinaryMap : use to storage contract binary map, key:contract binary, value:contract name */
     private Map<String, ContractDetail> contractBinaryMap;
 
+    /** @Fields contractCodeIndex : use to match the code of a deployed contract to contractBinaryMap */
+    private ContractCodeIndex contractCodeIndex;
+
+    /** @Fields eventBloomFilter : use to skip the blocks and receipts which hold no exported event */
+    private EventBloomFilter eventBloomFilter;
+
 }
@@ -0,0 +1,143 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.export.common.bo.contract;
+
+import cn.hutool.core.collection.CollectionUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.fisco.bcos.sdk.crypto.CryptoSuite;
+import org.fisco.bcos.sdk.model.TransactionReceipt;
+import org.fisco.bcos.sdk.utils.Numeric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * EventBloomFilter tells from the logs bloom of a block or a receipt whether it may hold an exported event, so that
+ * the blocks and receipts which can not are skipped before looking for their contracts and decoding their logs.
+ *
+ * <p>The bloom is 2048 bits, each topic sets the 3 bits given by the first 3 pairs of bytes of its hash. A bloom which
+ * is missing or malformed rules nothing out, nor does an all zero bloom unless the receipt has no log at all.
+ */
+@Slf4j
+public class EventBloomFilter {
+
+    private static final int BLOOM_BYTES = 256;
+    private static final int BLOOM_BITS_PER_TOPIC = 3;
+    private static final int REPORT_INTERVAL = 1000;
+
+    /** @Fields topicBits : the bloom bit indexes of each exported event topic */
+    private final List<int[]> topicBits = new ArrayList<>();
+
+    private final AtomicLong checkedBlocks = new AtomicLong();
+    private final AtomicLong skippedBlocks = new AtomicLong();
+    private final AtomicLong checkedReceipts = new AtomicLong();
+    private final AtomicLong skippedReceipts = new AtomicLong();
+
+    public EventBloomFilter(Collection<String> eventTopics, CryptoSuite cryptoSuite) {
+        for (String topic : eventTopics) {
+            byte[] hash = cryptoSuite.hash(Numeric.hexStringToByteArray(topic));
+            int[] bits = new int[BLOOM_BITS_PER_TOPIC];
+            for (int i = 0; i < BLOOM_BITS_PER_TOPIC; i++) {
+                bits[i] = (((hash[2 * i] & 0xff) << 8) | (hash[2 * i + 1] & 0xff)) & (BLOOM_BYTES * 8 - 1);
+            }
+            topicBits.add(bits);
+        }
+    }
+
+    /**
+     * @param logsBloom logs bloom of the block
+     * @return false if no receipt of the block can hold an exported event
+     */
+    public boolean mightContain(String logsBloom) {
+        boolean might = mightContain(toBytes(logsBloom));
+        if (!might) {
+            skippedBlocks.incrementAndGet();
+        }
+        if (checkedBlocks.incrementAndGet() % REPORT_INTERVAL == 0) {
+            log.info("Event bloom filter skipped {} of {} blocks and {} of {} receipts, skip rate {} and {}",
+                    skippedBlocks.get(), checkedBlocks.get(), skippedReceipts.get(), checkedReceipts.get(),
+                    String.format("%.2f", getBlockSkipRate()), String.format("%.2f", getReceiptSkipRate()));
+        }
+        return might;
+    }
+
+    /**
+     * @param receipt
+     * @return false if the receipt can not hold an exported event
+     */
+    public boolean mightContain(TransactionReceipt receipt) {
+        checkedReceipts.incrementAndGet();
+        boolean might = CollectionUtil.isNotEmpty(receipt.getLogs())
+                && mightContain(toBytes(receipt.getLogsBloom()));
+        if (!might) {
+            skippedReceipts.incrementAndGet();
+        }
+        return might;
+    }
+
+    public double getBlockSkipRate() {
+        return rate(skippedBlocks.get(), checkedBlocks.get());
+    }
+
+    public double getReceiptSkipRate() {
+        return rate(skippedReceipts.get(), checkedReceipts.get());
+    }
+
+    private boolean mightContain(byte[] bloom) {
+        if (bloom == null || isZero(bloom)) {
+            return true;
+        }
+        for (int[] bits : topicBits) {
+            boolean all = true;
+            for (int bit : bits) {
+                if ((bloom[BLOOM_BYTES - 1 - bit / 8] & (1 << (bit % 8))) == 0) {
+                    all = false;
+                    break;
+                }
+            }
+            if (all) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] toBytes(String logsBloom) {
+        if (StringUtils.isBlank(logsBloom)) {
+            return null;
+        }
+        try {
+            byte[] bloom = Numeric.hexStringToByteArray(logsBloom);
+            return bloom.length == BLOOM_BYTES ? bloom : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static boolean isZero(byte[] bloom) {
+        for (byte b : bloom) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double rate(long skipped, long checked) {
+        return checked == 0 ? 0 : (double) skipped / checked;
+    }
+}
@@ -0,0 +1,34 @@
+package com.webank.blockchain.data.export.common.bo.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.fisco.bcos.sdk.client.protocol.model.JsonTransactionResponse;
+import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.Block;
+import org.fisco.bcos.sdk.model.TransactionReceipt;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A block with its transactions and receipts, fetched once and shared by all the parser handlers.
+ */
+@Data
+@AllArgsConstructor
+public class BlockBundle {
+
+    private Block block;
+
+    /**
+     * transactions by hash, in the order of the block
+     */
+    private Map<String, JsonTransactionResponse> transactions;
+
+    /**
+     * receipts by transaction hash, a transaction whose receipt is not found has no entry
+     */
+    private Map<String, TransactionReceipt> receipts;
+
+    public Optional<TransactionReceipt> getReceipt(String transactionHash) {
+        return Optional.ofNullable(receipts.get(transactionHash));
+    }
+}
@@ -0,0 +1,13 @@
+package com.webank.blockchain.data.export.common.client;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Pushes the new block number of the chain to a listener as soon as the node reports it.
+ */
+public interface BlockNotifier {
+
+    void subscribe(LongConsumer listener);
+
+    void unsubscribe();
+}
@@ -17,6 +17,13 @@ public interface ChainClient {
 
     BcosBlock.Block getBlockByNumber(BigInteger blockNumber);
 
+    /**
+     * @return the block with transaction hashes only, enough to check its hash and parent hash
+     */
+    default BcosBlock.Block getBlockHeaderByNumber(BigInteger blockNumber) {
+        return getBlockByNumber(blockNumber);
+    }
+
     BigInteger getBlockNumber();
 
     String getCode(String address);
@@ -26,4 +33,11 @@ public interface ChainClient {
     BcosTransaction getTransactionByHash(String transactionHash);
 
     BcosTransactionReceipt getTransactionReceipt(String transactionHash);
+
+    /**
+     * @return the notifier of new blocks, or null if the client can only be polled
+     */
+    default BlockNotifier getBlockNotifier() {
+        return null;
+    }
 }
@@ -0,0 +1,45 @@
+package com.webank.blockchain.data.export.common.client;
+
+import lombok.extern.slf4j.Slf4j;
+import org.fisco.bcos.sdk.client.Client;
+
+import java.math.BigInteger;
+import java.util.function.LongConsumer;
+
+/**
+ * BlockNotifier on top of the block number notification the channel connection receives from the nodes.
+ */
+@Slf4j
+public class ChannelBlockNotifier implements BlockNotifier {
+
+    private final Client client;
+
+    private String registerId;
+
+    public ChannelBlockNotifier(Client client) {
+        this.client = client;
+    }
+
+    @Override
+    public synchronized void subscribe(LongConsumer listener) {
+        unsubscribe();
+        registerId = client.getGroupManagerService().registerBlockNotifyCallback((peerIpAndPort, notification) -> {
+            if (!String.valueOf(client.getGroupId()).equals(notification.getGroupId())) {
+                return;
+            }
+            try {
+                listener.accept(new BigInteger(notification.getBlockNumber()).longValue());
+            } catch (NumberFormatException e) {
+                log.warn("invalid block number notified by {}: {}", peerIpAndPort, notification.getBlockNumber());
+            }
+        });
+    }
+
+    @Override
+    public synchronized void unsubscribe() {
+        if (registerId != null) {
+            client.getGroupManagerService().eraseBlockNotifyCallback(registerId);
+            registerId = null;
+        }
+    }
+}
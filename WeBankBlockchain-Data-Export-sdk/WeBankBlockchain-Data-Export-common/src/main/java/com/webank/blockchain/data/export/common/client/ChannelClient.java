@@ -38,6 +38,11 @@ public class ChannelClient implements ChainClient {
         return client.getBlockByNumber(blockNumber,true).getBlock();
     }
 
+    @Override
+    public BcosBlock.Block getBlockHeaderByNumber(BigInteger blockNumber) {
+        return client.getBlockByNumber(blockNumber,false).getBlock();
+    }
+
     @Override
     public BigInteger getBlockNumber() {
         return client.getBlockNumber().getBlockNumber();
@@ -62,4 +67,9 @@ public class ChannelClient implements ChainClient {
     public BcosTransactionReceipt getTransactionReceipt(String hash) {
         return client.getTransactionReceipt(hash);
     }
+
+    @Override
+    public BlockNotifier getBlockNotifier() {
+        return new ChannelBlockNotifier(client);
+    }
 }
@@ -0,0 +1,113 @@
+package com.webank.blockchain.data.export.common.client;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.fisco.bcos.sdk.client.protocol.response.BcosBlock;
+import org.fisco.bcos.sdk.client.protocol.response.BcosTransaction;
+import org.fisco.bcos.sdk.client.protocol.response.BcosTransactionReceipt;
+import org.fisco.bcos.sdk.crypto.CryptoSuite;
+
+import java.math.BigInteger;
+
+/**
+ * CodeCachingClient keeps the codes got from its delegate in a least recently used cache bounded by the total code
+ * length, as the deployed code of an address never changes. A missing or empty code, e.g. "0x", is not cached,
+ * since the contract may be deployed later.
+ */
+@Slf4j
+public class CodeCachingClient implements ChainClient {
+
+    private final ChainClient delegate;
+
+    private final Cache<String, String> codeCache;
+
+    public static ChainClient wrap(ChainClient delegate, long maxCodeBytes) {
+        if (maxCodeBytes <= 0) {
+            return delegate;
+        }
+        return new CodeCachingClient(delegate, maxCodeBytes);
+    }
+
+    private CodeCachingClient(ChainClient delegate, long maxCodeBytes) {
+        this.delegate = delegate;
+        this.codeCache = CacheBuilder.newBuilder()
+                .maximumWeight(maxCodeBytes)
+                .weigher((String address, String code) -> address.length() + code.length())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @return the client wrapped by this one
+     */
+    public ChainClient getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return hit and miss counts of the code cache
+     */
+    public CacheStats getCodeCacheStats() {
+        return codeCache.stats();
+    }
+
+    @Override
+    public String getCode(String address) {
+        String code = codeCache.getIfPresent(address);
+        if (code != null) {
+            return code;
+        }
+        code = delegate.getCode(address);
+        if (!isEmptyCode(code)) {
+            codeCache.put(address, code);
+        }
+        CacheStats stats = codeCache.stats();
+        if (stats.missCount() % 1000 == 0) {
+            log.info("Code cache holds {} contracts, hit rate {}, {} hits and {} misses", codeCache.size(),
+                    String.format("%.2f", stats.hitRate()), stats.hitCount(), stats.missCount());
+        }
+        return code;
+    }
+
+    private static boolean isEmptyCode(String code) {
+        return StringUtils.isBlank(code) || "0x".equalsIgnoreCase(code.trim());
+    }
+
+    @Override
+    public BcosBlock.Block getBlockByNumber(BigInteger blockNumber) {
+        return delegate.getBlockByNumber(blockNumber);
+    }
+
+    @Override
+    public BcosBlock.Block getBlockHeaderByNumber(BigInteger blockNumber) {
+        return delegate.getBlockHeaderByNumber(blockNumber);
+    }
+
+    @Override
+    public BigInteger getBlockNumber() {
+        return delegate.getBlockNumber();
+    }
+
+    @Override
+    public CryptoSuite getCryptoSuite() {
+        return delegate.getCryptoSuite();
+    }
+
+    @Override
+    public BcosTransaction getTransactionByHash(String transactionHash) {
+        return delegate.getTransactionByHash(transactionHash);
+    }
+
+    @Override
+    public BcosTransactionReceipt getTransactionReceipt(String transactionHash) {
+        return delegate.getTransactionReceipt(transactionHash);
+    }
+
+    @Override
+    public BlockNotifier getBlockNotifier() {
+        return delegate.getBlockNotifier();
+    }
+}
@@ -58,6 +58,17 @@ public class RpcHttpClient implements ChainClient {
         return null;
     }
 
+    @Override
+    public BcosBlock.Block getBlockHeaderByNumber(BigInteger blockNumber) {
+        try {
+            return client.invoke("getBlockByNumber",
+                    new Object[] {group, String.valueOf(blockNumber.intValue()), false}, BcosBlock.Block.class);
+        } catch (Throwable e) {
+            log.error("JsonRpcHttpClient getBlockHeaderByNumber failed, reason : ", e);
+        }
+        return null;
+    }
+
     @Override
     public BigInteger getBlockNumber() {
         try {
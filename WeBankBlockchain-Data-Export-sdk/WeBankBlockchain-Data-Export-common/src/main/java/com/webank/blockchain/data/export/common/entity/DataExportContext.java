@@ -8,6 +8,8 @@ import org.fisco.bcos.sdk.transaction.codec.decode.TransactionDecoderInterface;
 
 import javax.sql.DataSource;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 
 /**
  * @author wesleywang
@@ -44,9 +46,30 @@ public class DataExportContext {
 
     private TopicRegistry topicRegistry;
 
+    private StageMetrics stageMetrics = new StageMetrics();
+
+    private RetryScheduler retryScheduler = new RetryScheduler();
+
+    /**
+     * long-lived worker pools by name, shared by the tasks of the context
+     */
+    private Map<String, ExecutorService> sharedPools = new ConcurrentHashMap<>();
+
     public String sqlScript = String.format("%s\n%s\n%s\n%s\n%s\n%s\n%s\n%s\n",
             TableSQL.BLOCK_DETAIL_INFO, TableSQL.BLOCK_RAW_DATA, TableSQL.BLOCK_TASK_POOL,
             TableSQL.BLOCK_TX_DETAIL_INFO, TableSQL.DEPLOYED_ACCOUNT_INFO,
             TableSQL.TX_RECEIPT_RAW_DATA, TableSQL.TX_RAW_DATA, TableSQL.CONTRACT_INFO);
 
+    /**
+     * shut down the shared pools when the export stops, a later call for a pool of the name creates a new one.
+     */
+    public void shutdownSharedPools() {
+        for (String name : sharedPools.keySet()) {
+            ExecutorService pool = sharedPools.remove(name);
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
 }
@@ -19,6 +19,92 @@ public class ExportConfig {
     private int crawlBatchUnit = 1000;
     private long frequency = 5;
 
+    /**
+     * max rows of a multi-row insert or update of the block task pool
+     */
+    private int taskPoolBatchSize = 500;
+
+    /**
+     * in single instance mode, keep the task pool in memory as height ranges per status, and checkpoint them into
+     * the block_task_range table every taskTrackerCheckpointSeconds instead of writing a task pool row per block
+     */
+    private boolean taskTrackerEnabled;
+    private long taskTrackerCheckpointSeconds = 10;
+
+    /**
+     * at the chain tip, wake up as soon as the node pushes a new block number instead of sleeping frequency seconds,
+     * clients without block notification keep polling every frequency seconds
+     */
+    private boolean blockNotifyEnabled = true;
+
+    /**
+     * the chain finalizes a block once it is committed, as PBFT and rPBFT do, so all tasks are prepared FIXED and no
+     * fork is checked, if finalityAuditSeconds is positive the blocks done are still audited against the chain hashes
+     * at that interval in background, from startBlockHeight on, and the audited height is kept in export_cursor
+     */
+    private boolean instantFinality;
+    private long finalityAuditSeconds = 0;
+
+    /**
+     * number of block headers requested concurrently when checking the uncertain blocks for forks
+     */
+    private int forkCheckThreadCount = 4;
+
+    /**
+     * number of blocks of a batch parsed and stored concurrently, their DONE status is still committed in order
+     */
+    private int depotThreadCount = 1;
+
+    /**
+     * number of getBlockByNumber requests kept in flight ahead of the depot, and the estimated bytes of fetched
+     * blocks allowed to wait for it. The requests of all the prefetchers run on one pool of prefetchThreadCount threads
+     */
+    private int prefetchWindow = 1;
+    private long prefetchMemoryBudget = 64 * 1024 * 1024L;
+    private int prefetchThreadCount = 8;
+
+    /**
+     * overlap block fetching, parsing and storing in single instance mode, each stage has its own thread count
+     * and hands blocks over to the next stage through a queue of pipelineQueueCapacity
+     */
+    private boolean pipelineEnabled;
+    private int fetchThreadCount = 4;
+    private int parseThreadCount = 4;
+    private int storeThreadCount = 2;
+    private int pipelineQueueCapacity = 64;
+
+    /**
+     * resize crawlBatchUnit and depotThreadCount at runtime from the measured stage latency and the distance to the
+     * chain head, a batch aims at taking targetBatchMillis
+     */
+    private boolean adaptiveBatchEnabled;
+    private int minCrawlBatchUnit = 10;
+    private int maxCrawlBatchUnit = 10000;
+    private int maxDepotThreadCount = 16;
+    private long targetBatchMillis = 30 * 1000L;
+
+    /**
+     * in single instance mode, backfill the history up to the chain head minus the fork certainty blocks on
+     * backfillThreadCount threads, backfillChunkSize blocks at a time, while the crawl loop only follows the tip
+     */
+    private boolean dualLaneEnabled;
+    private int backfillThreadCount = 4;
+    private int backfillChunkSize = 10000;
+
+    /**
+     * a failed block is retried after retryBaseSeconds doubled for each failure, with jitter and at most
+     * retryMaxSeconds, and goes to the dead letter status after maxRetryCount attempts, where it waits for a reset
+     */
+    private int maxRetryCount = 8;
+    private long retryBaseSeconds = 10;
+    private long retryMaxSeconds = 30 * 60;
+
+    /**
+     * total length of the contract codes kept in memory, so that the code of a hot contract is got from the chain
+     * once, 0 to get it for every transaction
+     */
+    private long codeCacheMaxBytes = 64 * 1024 * 1024L;
+
     private long startBlockHeight = 0;
     private String startDate;
 
@@ -61,5 +147,33 @@ public class ExportConfig {
     private String dataFlowJobCron = "0/"+ frequency + " * * * * ?";
     private String dataFlowJobItemParameters = "0=A,1=B,2=C,3=D,4=E,5=F,6=G,7=H";
     private int dataFlowJobShardingTotalCount = 8;
+
+    /**
+     * number of tasks a sharding item of the depot job leases at a time, it keeps leasing until no task is left or
+     * the lease expires
+     */
+    private int dataFlowJobLeaseSize = 100;
+
+    /**
+     * heights are assigned to the sharding items of the depot job in contiguous segments of dataFlowJobSegmentSize,
+     * segment k belongs to item k % dataFlowJobShardingTotalCount, except the segment at the top of the task pool,
+     * which is shared by all the items
+     */
+    private long dataFlowJobSegmentSize = 1000;
+
+    /**
+     * sharding items publish their blocks/s and backlog to the registry, and an item without tasks left in its own
+     * segments leases the tasks of the peer which needs the longest time to finish
+     */
+    private boolean dataFlowJobWorkStealing;
+
+    /**
+     * in multi living mode, coordinate the instances by lease rows of the export database instead of ZooKeeper and
+     * ElasticJob. The holder of the leader lease prepares the tasks and checks forks, and coordinatorWorkerCount
+     * workers per instance lease task ranges continuously, each under one of dataFlowJobShardingTotalCount slots
+     */
+    private boolean leaseCoordinatorEnabled;
+    private long coordinatorLeaseSeconds = 30;
+    private int coordinatorWorkerCount = 2;
     private TopicRegistry topicRegistry = new TopicRegistry();
 }
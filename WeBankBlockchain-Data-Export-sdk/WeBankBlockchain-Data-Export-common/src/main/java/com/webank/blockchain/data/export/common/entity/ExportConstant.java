@@ -60,6 +60,12 @@ public class ExportConstant {
 
     public static final String CONTRACT_INFO_TABLE = "contract_info";
 
+    public static final String BLOCK_TASK_RANGE_TABLE = "block_task_range";
+
+    public static final String EXPORT_LEASE_TABLE = "export_lease";
+
+    public static final String EXPORT_CURSOR_TABLE = "export_cursor";
+
     public static final List<String> tables = Lists.newArrayList(
             BLOCK_DETAIL_INFO_TABLE,
             BLOCK_TASK_POOL_TABLE,
@@ -0,0 +1,100 @@
+package com.webank.blockchain.data.export.common.entity;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retry attempts of the failed blocks. A failed block is retried at once the first time, and after an exponential
+ * backoff with jitter for each later failure, until it runs out of attempts and goes to the dead letter status.
+ */
+public class RetryScheduler {
+
+    public enum Decision {
+        RETRY, WAIT, DEAD_LETTER
+    }
+
+    private static class Retry {
+        private int attempts;
+        private long nextRetryTime;
+    }
+
+    private final Map<Long, Retry> retries = new ConcurrentHashMap<>();
+
+    private final AtomicLong retryCount = new AtomicLong();
+
+    private final AtomicLong deadLetterCount = new AtomicLong();
+
+    /**
+     * decide what to do with a failed block, a RETRY counts as an attempt.
+     *
+     * @param blockHeight
+     * @param config
+     * @param now
+     * @return the decision
+     */
+    public Decision schedule(long blockHeight, ExportConfig config, long now) {
+        Retry retry = retries.computeIfAbsent(blockHeight, h -> new Retry());
+        if (retry.attempts >= config.getMaxRetryCount()) {
+            retries.remove(blockHeight);
+            deadLetterCount.incrementAndGet();
+            return Decision.DEAD_LETTER;
+        }
+        if (now < retry.nextRetryTime) {
+            return Decision.WAIT;
+        }
+        retry.attempts++;
+        retry.nextRetryTime = now + backoff(retry.attempts, config);
+        retryCount.incrementAndGet();
+        return Decision.RETRY;
+    }
+
+    public void onSuccess(long blockHeight) {
+        if (!retries.isEmpty()) {
+            retries.remove(blockHeight);
+        }
+    }
+
+    public void onSuccess(Collection<Long> blockHeights) {
+        if (!retries.isEmpty()) {
+            blockHeights.forEach(retries::remove);
+        }
+    }
+
+    /**
+     * @return number of failed blocks waiting for their next attempt
+     */
+    public int getPendingCount() {
+        return retries.size();
+    }
+
+    /**
+     * @return heights of the failed blocks waiting for their next attempt
+     */
+    public Set<Long> getPendingHeights() {
+        return new HashSet<>(retries.keySet());
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    public long getDeadLetterCount() {
+        return deadLetterCount.get();
+    }
+
+    /**
+     * equal jitter, half of the capped exponential delay is fixed and the other half is random, so that the blocks
+     * failed together are not retried together.
+     */
+    private static long backoff(int attempts, ExportConfig config) {
+        long maxMillis = config.getRetryMaxSeconds() * 1000L;
+        long delay = Math.min(config.getRetryBaseSeconds() * 1000L << Math.min(attempts - 1, 30), maxMillis);
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+}
@@ -0,0 +1,46 @@
+package com.webank.blockchain.data.export.common.entity;
+
+/**
+ * Moving averages of the per block latency of the fetch, parse and store stages, in milliseconds.
+ */
+public class StageMetrics {
+
+    private static final double ALPHA = 0.2;
+
+    private double fetchLatency;
+
+    private double parseLatency;
+
+    private double storeLatency;
+
+    public synchronized void recordFetch(long millis) {
+        fetchLatency = average(fetchLatency, millis);
+    }
+
+    public synchronized void recordParse(long millis) {
+        parseLatency = average(parseLatency, millis);
+    }
+
+    public synchronized void recordStore(long millis) {
+        storeLatency = average(storeLatency, millis);
+    }
+
+    public synchronized double getFetchLatency() {
+        return fetchLatency;
+    }
+
+    public synchronized double getParseLatency() {
+        return parseLatency;
+    }
+
+    public synchronized double getStoreLatency() {
+        return storeLatency;
+    }
+
+    private static double average(double current, long sample) {
+        if (current == 0) {
+            return sample;
+        }
+        return current + ALPHA * (sample - current);
+    }
+}
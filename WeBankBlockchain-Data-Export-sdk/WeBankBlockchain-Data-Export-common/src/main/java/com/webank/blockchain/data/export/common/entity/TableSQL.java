@@ -74,6 +74,35 @@ public class TableSQL {
             "  KEY `depot_updatetime` (`depot_updatetime`)\n" +
             ") ENGINE=InnoDB AUTO_INCREMENT=1 DEFAULT CHARSET=utf8mb4;";
 
+    public static final String BLOCK_TASK_RANGE = "CREATE TABLE `block_task_range` (\n" +
+            "  `pk_id` bigint(20) NOT NULL AUTO_INCREMENT,\n" +
+            "  `sync_status` smallint(6) DEFAULT NULL,\n" +
+            "  `certainty` smallint(6) DEFAULT NULL,\n" +
+            "  `start_height` bigint(20) DEFAULT NULL,\n" +
+            "  `end_height` bigint(20) DEFAULT NULL,\n" +
+            "  `depot_updatetime` datetime(6) DEFAULT NULL,\n" +
+            "  PRIMARY KEY (`pk_id`),\n" +
+            "  KEY `start_height` (`start_height`)\n" +
+            ") ENGINE=InnoDB AUTO_INCREMENT=1 DEFAULT CHARSET=utf8mb4;";
+
+    public static final String EXPORT_LEASE = "CREATE TABLE `export_lease` (\n" +
+            "  `pk_id` bigint(20) NOT NULL AUTO_INCREMENT,\n" +
+            "  `lease_name` varchar(64) NOT NULL,\n" +
+            "  `owner` varchar(255) DEFAULT NULL,\n" +
+            "  `expire_time` datetime(6) DEFAULT NULL,\n" +
+            "  PRIMARY KEY (`pk_id`),\n" +
+            "  UNIQUE KEY `UK_lease_name` (`lease_name`)\n" +
+            ") ENGINE=InnoDB AUTO_INCREMENT=1 DEFAULT CHARSET=utf8mb4;";
+
+    public static final String EXPORT_CURSOR = "CREATE TABLE `export_cursor` (\n" +
+            "  `pk_id` bigint(20) NOT NULL AUTO_INCREMENT,\n" +
+            "  `cursor_name` varchar(64) NOT NULL,\n" +
+            "  `cursor_height` bigint(20) DEFAULT NULL,\n" +
+            "  `update_time` datetime(6) DEFAULT NULL,\n" +
+            "  PRIMARY KEY (`pk_id`),\n" +
+            "  UNIQUE KEY `UK_cursor_name` (`cursor_name`)\n" +
+            ") ENGINE=InnoDB AUTO_INCREMENT=1 DEFAULT CHARSET=utf8mb4;";
+
     public static final String BLOCK_TX_DETAIL_INFO = "CREATE TABLE `block_tx_detail_info` (\n" +
             "  `pk_id` bigint(20) NOT NULL AUTO_INCREMENT,\n" +
             "  `block_hash` varchar(255) DEFAULT NULL,\n" +
@@ -231,6 +260,9 @@ public class TableSQL {
         tableSqlMap.put("block_detail_info", BLOCK_DETAIL_INFO);
         tableSqlMap.put("block_raw_data", BLOCK_RAW_DATA);
         tableSqlMap.put("block_task_pool", BLOCK_TASK_POOL);
+        tableSqlMap.put("block_task_range", BLOCK_TASK_RANGE);
+        tableSqlMap.put("export_lease", EXPORT_LEASE);
+        tableSqlMap.put("export_cursor", EXPORT_CURSOR);
         tableSqlMap.put("block_tx_detail_info", BLOCK_TX_DETAIL_INFO);
         tableSqlMap.put("deployed_account_info", DEPLOYED_ACCOUNT_INFO);
         tableSqlMap.put("tx_receipt_raw_data", TX_RECEIPT_RAW_DATA);
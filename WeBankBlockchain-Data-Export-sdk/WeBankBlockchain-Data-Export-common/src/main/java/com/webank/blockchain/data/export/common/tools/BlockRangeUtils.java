@@ -0,0 +1,70 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.export.common.tools;
+
+import com.webank.blockchain.data.export.common.bo.data.BlockRange;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * BlockRangeUtils collapses block heights into contiguous ranges, so that a set of heights can be addressed by a
+ * few BETWEEN conditions instead of one statement per height.
+ */
+public class BlockRangeUtils {
+
+    /**
+     * @param blockHeights in any order, duplicates allowed
+     * @return the ascending, non adjacent ranges covering exactly the given heights
+     */
+    public static List<BlockRange> merge(Collection<Long> blockHeights) {
+        List<BlockRange> ranges = new ArrayList<>();
+        BlockRange current = null;
+        for (long height : new TreeSet<>(blockHeights)) {
+            if (current != null && height == current.getTo() + 1) {
+                current.setTo(height);
+            } else {
+                current = new BlockRange(height, height);
+                ranges.add(current);
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * split heights into segments of segmentSize, segment k covers k * segmentSize to (k + 1) * segmentSize - 1 and
+     * is owned by item k % segmentCount.
+     *
+     * @param from the lowest height
+     * @param to the highest height
+     * @param segmentSize
+     * @param segmentCount
+     * @param segmentItem
+     * @param limit max number of ranges
+     * @return the ascending ranges of the segments of segmentItem, clipped to from and to
+     */
+    public static List<BlockRange> segments(long from, long to, long segmentSize, int segmentCount, int segmentItem,
+                                            int limit) {
+        List<BlockRange> ranges = new ArrayList<>();
+        long segment = from / segmentSize;
+        segment += Math.floorMod(segmentItem - segment, (long) segmentCount);
+        for (; segment * segmentSize <= to && ranges.size() < limit; segment += segmentCount) {
+            ranges.add(new BlockRange(Math.max(from, segment * segmentSize),
+                    Math.min(to, (segment + 1) * segmentSize - 1)));
+        }
+        return ranges;
+    }
+}
@@ -13,8 +13,17 @@
  */
 package com.webank.blockchain.data.export.service;
 
+import com.webank.blockchain.data.export.common.bo.data.BlockInfoBO;
+import com.webank.blockchain.data.export.tools.ExecutorUtils;
+import lombok.extern.slf4j.Slf4j;
 import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.Block;
 
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+
 /**
  * BlockAsyncService
  *
@@ -23,9 +32,108 @@ import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.Block;
  * @data Jun 27, 2019 3:54:56 PM
  *
  */
+@Slf4j
 public class BlockAsyncService {
 
+    private final ExecutorService pool;
+
+    private volatile int threadCount;
+
+    private volatile long watermark = -1;
+
+    public static BlockAsyncService create(int threadCount) {
+        return new BlockAsyncService(threadCount);
+    }
+
+    private BlockAsyncService(int threadCount) {
+        this.threadCount = threadCount;
+        this.pool = ExecutorUtils.newFixedThreadPool("block-async", threadCount);
+    }
+
     public static void handleSingleBlock(Block b, long total) {
         BlockDepotService.process(b, total);
     }
+
+    /**
+     * parse and store the blocks of a batch on the worker pool, and wait until all of them are settled. Blocks may
+     * finish in any order, but their DONE status is committed in height order through a BlockCommitWatermark.
+     *
+     * @param blocks blocks of the batch in ascending height order
+     * @param total current chain height, for logging
+     */
+    public void handleBlocks(Iterator<Block> blocks, long total) throws InterruptedException {
+        BlockCommitWatermark commitWatermark = new BlockCommitWatermark(BlockDepotService::markDone);
+        Semaphore inFlight = new Semaphore(threadCount * 2);
+        Phaser phaser = new Phaser(1);
+        try {
+            while (blocks.hasNext()) {
+                Block block = blocks.next();
+                long blockHeight = block.getNumber().longValue();
+                inFlight.acquire();
+                commitWatermark.track(blockHeight);
+                phaser.register();
+                pool.execute(ExecutorUtils.wrap(() -> {
+                    try {
+                        commitWatermark.settle(blockHeight, handle(block, total));
+                    } finally {
+                        inFlight.release();
+                        phaser.arriveAndDeregister();
+                    }
+                }));
+            }
+        } finally {
+            phaser.awaitAdvanceInterruptibly(phaser.arrive());
+            watermark = commitWatermark.getWatermark();
+        }
+        log.info("Blocks are committed up to height {}.", watermark);
+    }
+
+    /**
+     * @return the height up to which the last batch is contiguously settled.
+     */
+    public long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * change the number of worker threads, takes effect from the next batch.
+     */
+    public void resize(int threadCount) {
+        if (threadCount == this.threadCount || !(pool instanceof ThreadPoolExecutor)) {
+            return;
+        }
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) pool;
+        if (threadCount > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threadCount);
+            executor.setCorePoolSize(threadCount);
+        } else {
+            executor.setCorePoolSize(threadCount);
+            executor.setMaximumPoolSize(threadCount);
+        }
+        this.threadCount = threadCount;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private static boolean handle(Block block, long total) {
+        long blockHeight = block.getNumber().longValue();
+        boolean done = false;
+        try {
+            BlockInfoBO blockInfo = BlockCrawlService.parse(block);
+            BlockDepotService.store(blockInfo);
+            log.info("Block {} of {} sync block succeed.", blockHeight, total);
+            done = true;
+        } catch (Exception e) {
+            log.error("block {}, exception occur in job processing: {}", blockHeight, e.getMessage());
+            BlockDepotService.markError(blockHeight);
+        }
+        BlockDepotService.clearCache(blockHeight);
+        return done;
+    }
 }
@@ -15,24 +15,27 @@ package com.webank.blockchain.data.export.service;
 
 import cn.hutool.core.collection.CollectionUtil;
 import cn.hutool.core.date.DateUtil;
+import com.webank.blockchain.data.export.common.bo.data.BlockRange;
 import com.webank.blockchain.data.export.common.constants.BlockConstants;
 import com.webank.blockchain.data.export.common.entity.ExportConfig;
 import com.webank.blockchain.data.export.common.entity.ExportConstant;
+import com.webank.blockchain.data.export.common.entity.RetryScheduler;
 import com.webank.blockchain.data.export.common.enums.BlockCertaintyEnum;
 import com.webank.blockchain.data.export.common.enums.TxInfoStatusEnum;
+import com.webank.blockchain.data.export.common.tools.BlockRangeUtils;
 import com.webank.blockchain.data.export.db.entity.BlockTaskPool;
 import com.webank.blockchain.data.export.db.repository.BlockTaskPoolRepository;
 import com.webank.blockchain.data.export.task.DataPersistenceManager;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
-import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.Block;
 
 import java.io.IOException;
-import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -47,20 +50,65 @@ import java.util.stream.Collectors;
 @Data
 public class BlockCheckService {
 
+    private static final int GAP_SCAN_WINDOW = 1 << 16;
+
     public static void processErrors() {
         log.info("Begin to check error records");
         BlockTaskPoolRepository blockTaskPoolRepository =
                 DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository();
         List<BlockTaskPool> unnormalRecords = blockTaskPoolRepository.findUnNormalRecords();
+        RetryScheduler retryScheduler = ExportConstant.getCurrentContext().getRetryScheduler();
         if (!CollectionUtil.isEmpty(unnormalRecords)) {
             log.info("sync block detect {} error transactions.", unnormalRecords.size());
-            for(BlockTaskPool taskPool : unnormalRecords) {
-                log.error("Block {} sync error, and begin to rollback.", taskPool.getBlockHeight());
-                RollBackService.rollback(taskPool.getBlockHeight(), taskPool.getBlockHeight() + 1);
-                blockTaskPoolRepository.setSyncStatusByBlockHeight((short) TxInfoStatusEnum.INIT.getStatus(),
-                        new Date(), taskPool.getBlockHeight());
+            ExportConfig config = ExportConstant.getCurrentContext().getConfig();
+            long now = System.currentTimeMillis();
+            List<Long> retryBlocks = new ArrayList<>();
+            List<Long> deadBlocks = new ArrayList<>();
+            for (BlockTaskPool pool : unnormalRecords) {
+                RetryScheduler.Decision decision = retryScheduler.schedule(pool.getBlockHeight(), config, now);
+                if (decision == RetryScheduler.Decision.RETRY) {
+                    retryBlocks.add(pool.getBlockHeight());
+                } else if (decision == RetryScheduler.Decision.DEAD_LETTER) {
+                    deadBlocks.add(pool.getBlockHeight());
+                }
             }
+            rollbackErrors(retryBlocks, TxInfoStatusEnum.INIT, "sync error, and begin to rollback");
+            rollbackErrors(deadBlocks, TxInfoStatusEnum.DEAD_LETTER, "runs out of retries, and goes to dead letter");
+        }
+        pruneRetries(retryScheduler, blockTaskPoolRepository);
+        if (retryScheduler.getPendingCount() > 0) {
+            log.info("Retry pressure: {} blocks waiting for retry, {} retries and {} dead letters in total",
+                    retryScheduler.getPendingCount(), retryScheduler.getRetryCount(),
+                    retryScheduler.getDeadLetterCount());
+        }
+    }
+
+    /**
+     * forget the failed blocks which are done or gone meanwhile, in multi living mode they may have been done by
+     * another instance, which doesn't share the retries of this one.
+     */
+    private static void pruneRetries(RetryScheduler retryScheduler, BlockTaskPoolRepository blockTaskPoolRepository) {
+        Set<Long> finished = retryScheduler.getPendingHeights();
+        if (finished.isEmpty()) {
+            return;
+        }
+        for (BlockRange range : BlockRangeUtils.merge(finished)) {
+            blockTaskPoolRepository.findByBlockHeightRange(range.getFrom(), range.getTo()).stream()
+                    .filter(task -> task.getSyncStatus() != TxInfoStatusEnum.DONE.getStatus())
+                    .forEach(task -> finished.remove(task.getBlockHeight()));
+        }
+        retryScheduler.onSuccess(finished);
+    }
+
+    private static void rollbackErrors(List<Long> blockHeights, TxInfoStatusEnum status, String reason) {
+        if (blockHeights.isEmpty()) {
+            return;
         }
+        List<BlockRange> ranges = BlockRangeUtils.merge(blockHeights);
+        ranges.forEach(range -> log.error("Block {} to {} {}.", range.getFrom(), range.getTo(), reason));
+        RollBackService.rollbackRanges(ranges);
+        DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository()
+                .setSyncStatusByBlockHeights((short) status.getStatus(), new Date(), blockHeights);
     }
 
     public static void checkForks(long currentBlockHeight) throws IOException {
@@ -69,6 +117,8 @@ public class BlockCheckService {
                 DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository();
         List<BlockTaskPool> uncertainBlocks =
                 blockTaskPoolRepository.findByCertainty((short) BlockCertaintyEnum.UNCERTAIN.getCertainty());
+        List<Long> fixedBlocks = new ArrayList<>();
+        List<Long> syncedBlocks = new ArrayList<>();
         for (BlockTaskPool pool : uncertainBlocks) {
             if (pool.getBlockHeight() <= currentBlockHeight - BlockConstants.MAX_FORK_CERTAINTY_BLOCK_NUMBER) {
                 if (pool.getSyncStatus() == TxInfoStatusEnum.DOING.getStatus()) {
@@ -77,29 +127,20 @@ public class BlockCheckService {
                 }
                 if (pool.getSyncStatus() == TxInfoStatusEnum.INIT.getStatus()) {
                     log.error("block {} is not sync!", pool.getBlockHeight());
-                    blockTaskPoolRepository.setCertaintyByBlockHeight((short) BlockCertaintyEnum.FIXED.getCertainty(),
-                            pool.getBlockHeight());
+                    fixedBlocks.add(pool.getBlockHeight());
                     continue;
                 }
-                Block block = BlockCrawlService.getBlock(BigInteger.valueOf(pool.getBlockHeight()));
-                String newHash = block.getHash();
-                if (!newHash.equals(
-                        DataPersistenceManager.getCurrentManager().getBlockDetailInfoRepository()
-                                .findByBlockHeight(pool.getBlockHeight()).getBlockHash())) {
-                    log.info("Block {} is forked!!! ready to resync", pool.getBlockHeight());
-                    RollBackService.rollback(pool.getBlockHeight(), pool.getBlockHeight() + 1);
-                    blockTaskPoolRepository.setSyncStatusAndCertaintyByBlockHeight(
-                            (short) TxInfoStatusEnum.INIT.getStatus(), (short) BlockCertaintyEnum.FIXED.getCertainty(),
-                            pool.getBlockHeight());
-                } else {
-                    log.info("Block {} is not forked!", pool.getBlockHeight());
-                    blockTaskPoolRepository.setCertaintyByBlockHeight((short) BlockCertaintyEnum.FIXED.getCertainty(),
-                            pool.getBlockHeight());
-                }
-
+                syncedBlocks.add(pool.getBlockHeight());
             }
         }
-
+        BlockForkVerifier.VerifyResult result = BlockForkVerifier.verify(syncedBlocks);
+        fixedBlocks.addAll(result.getFixedBlocks());
+        List<Long> forkedBlocks = result.getForkedBlocks();
+        RollBackService.rollbackBlocks(forkedBlocks);
+        blockTaskPoolRepository.setCertaintyByBlockHeights((short) BlockCertaintyEnum.FIXED.getCertainty(),
+                fixedBlocks);
+        blockTaskPoolRepository.setSyncStatusAndCertaintyByBlockHeights((short) TxInfoStatusEnum.INIT.getStatus(),
+                (short) BlockCertaintyEnum.FIXED.getCertainty(), forkedBlocks);
     }
 
     public static void checkTimeOut() {
@@ -112,59 +153,125 @@ public class BlockCheckService {
         if (!CollectionUtil.isEmpty(list)) {
             log.info("Detect {} timeout transactions.", list.size());
         }
-        list.forEach(p -> {
-            log.error("Block {} sync block timeout!!, the depot_time is {}, and the threshold time is {}",
-                    p.getBlockHeight(), p.getDepotUpdatetime(), offsetDate);
-            blockTaskPoolRepository.setSyncStatusByBlockHeight((short) TxInfoStatusEnum.TIMEOUT.getStatus(), new Date(),
-                    p.getBlockHeight());
-        });
+        list.forEach(p -> log.error(
+                "Block {} sync block timeout!!, the depot_time is {}, and the threshold time is {}",
+                p.getBlockHeight(), p.getDepotUpdatetime(), offsetDate));
+        blockTaskPoolRepository.setSyncStatusByBlockHeights((short) TxInfoStatusEnum.TIMEOUT.getStatus(), new Date(),
+                list.stream().map(BlockTaskPool::getBlockHeight).collect(Collectors.toList()));
 
     }
 
     public static void checkTaskCount(long startBlockNumber, long currentMaxTaskPoolNumber) {
         log.info("Check task count from {} to {}", startBlockNumber, currentMaxTaskPoolNumber);
-        BlockTaskPoolRepository blockTaskPoolRepository =
-                DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository();
-        ExportConfig config = ExportConstant.getCurrentContext().getConfig();
-        if (isComplete(startBlockNumber, currentMaxTaskPoolNumber)) {
+        List<BlockRange> gaps;
+        try {
+            gaps = findMissingRanges(startBlockNumber, currentMaxTaskPoolNumber);
+        } catch (IllegalStateException e) {
+            log.error("Check task count from {} to {} is skipped, {}", startBlockNumber, currentMaxTaskPoolNumber,
+                    e.getMessage());
             return;
         }
         List<BlockTaskPool> supplements = new ArrayList<>();
-        long t = startBlockNumber;
-        for (long i = startBlockNumber; i <= currentMaxTaskPoolNumber
-                - config.getCrawlBatchUnit(); i += config.getCrawlBatchUnit()) {
-            long j = i + config.getCrawlBatchUnit() - 1;
-            Optional<List<BlockTaskPool>> optional = findMissingPoolRecords(i, j);
-            optional.ifPresent(supplements::addAll);
-            t = j + 1;
-        }
-        Optional<List<BlockTaskPool>> optional = findMissingPoolRecords(t, currentMaxTaskPoolNumber);
-        optional.ifPresent(supplements::addAll);
+        for (BlockRange range : gaps) {
+            log.info("Successfully detect block {} to {} is missing. Try to sync block again.", range.getFrom(),
+                    range.getTo());
+            supplements.addAll(toMissingRecords(range));
+        }
+        if (supplements.isEmpty()) {
+            return;
+        }
         log.info("Find {} missing pool numbers", supplements.size());
-        blockTaskPoolRepository.saveAll(supplements);
+        DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository().saveAll(supplements);
     }
 
     public static Optional<List<BlockTaskPool>> findMissingPoolRecords(long startIndex, long endIndex) {
-        BlockTaskPoolRepository blockTaskPoolRepository =
-                DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository();
         if (isComplete(startIndex, endIndex)) {
             return Optional.empty();
         }
-        List<BlockTaskPool> list = blockTaskPoolRepository.findByBlockHeightRange(startIndex, endIndex);
-        List<Long> ids = list.stream().map(BlockTaskPool::getBlockHeight).collect(Collectors.toList());
         List<BlockTaskPool> supplements = new ArrayList<>();
-        for (long tmpIndex = startIndex; tmpIndex <= endIndex; tmpIndex++) {
-            if (ids.contains(tmpIndex)) {
-                continue;
+        findMissingRanges(startIndex, endIndex).forEach(range -> supplements.addAll(toMissingRecords(range)));
+        return Optional.of(supplements);
+    }
+
+    /**
+     * find the heights missing from the task pool. Ranges whose count is short are split in halves, so that complete
+     * ranges cost a count each, until a range is small enough to be scanned into a bitset of its heights. A range
+     * counted empty is only a gap once the scan confirms it.
+     *
+     * @return the ascending ranges of missing heights
+     * @throws IllegalStateException if a count or scan of the task pool fails, so no gap is guessed from it
+     */
+    public static List<BlockRange> findMissingRanges(long startIndex, long endIndex) {
+        List<BlockRange> gaps = new ArrayList<>();
+        collectMissingRanges(startIndex, endIndex, gaps);
+        return gaps;
+    }
+
+    private static void collectMissingRanges(long startIndex, long endIndex, List<BlockRange> gaps) {
+        BlockTaskPoolRepository blockTaskPoolRepository =
+                DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository();
+        long deserveCount = endIndex - startIndex + 1;
+        long actualCount = blockTaskPoolRepository.countByBlockHeightRange(startIndex, endIndex);
+        if (actualCount < 0) {
+            throw new IllegalStateException("count of block " + startIndex + " to " + endIndex + " failed");
+        }
+        if (actualCount == deserveCount) {
+            return;
+        }
+        List<Long> heights = null;
+        if (actualCount == 0) {
+            heights = scanHeights(blockTaskPoolRepository, startIndex, endIndex);
+            if (heights.isEmpty()) {
+                addGap(gaps, startIndex, endIndex);
+                return;
             }
-            log.info("Successfully detect block {} is missing. Try to sync block again.", tmpIndex);
-            BlockTaskPool pool = new BlockTaskPool().setBlockHeight(tmpIndex)
+        }
+        if (deserveCount > GAP_SCAN_WINDOW) {
+            long middle = startIndex + (endIndex - startIndex) / 2;
+            collectMissingRanges(startIndex, middle, gaps);
+            collectMissingRanges(middle + 1, endIndex, gaps);
+            return;
+        }
+        if (heights == null) {
+            heights = scanHeights(blockTaskPoolRepository, startIndex, endIndex);
+        }
+        BitSet present = new BitSet((int) deserveCount);
+        heights.forEach(height -> present.set((int) (height - startIndex)));
+        for (int from = present.nextClearBit(0); from < deserveCount; ) {
+            int to = present.nextSetBit(from);
+            if (to < 0) {
+                to = (int) deserveCount;
+            }
+            addGap(gaps, startIndex + from, startIndex + to - 1);
+            from = present.nextClearBit(to);
+        }
+    }
+
+    private static List<Long> scanHeights(BlockTaskPoolRepository blockTaskPoolRepository, long startIndex,
+                                          long endIndex) {
+        return blockTaskPoolRepository.findBlockHeightsByBlockHeightRange(startIndex, endIndex).orElseThrow(
+                () -> new IllegalStateException("scan of block " + startIndex + " to " + endIndex + " failed"));
+    }
+
+    private static void addGap(List<BlockRange> gaps, long from, long to) {
+        if (!gaps.isEmpty() && gaps.get(gaps.size() - 1).getTo() + 1 == from) {
+            gaps.get(gaps.size() - 1).setTo(to);
+        } else {
+            gaps.add(new BlockRange(from, to));
+        }
+    }
+
+    private static List<BlockTaskPool> toMissingRecords(BlockRange range) {
+        List<BlockTaskPool> records = new ArrayList<>();
+        int certainty = ExportConstant.getCurrentContext().getConfig().isInstantFinality()
+                ? BlockCertaintyEnum.FIXED.getCertainty() : BlockCertaintyEnum.UNCERTAIN.getCertainty();
+        for (long height = range.getFrom(); height <= range.getTo(); height++) {
+            records.add(new BlockTaskPool().setBlockHeight(height)
                     .setSyncStatus((short) TxInfoStatusEnum.ERROR.getStatus())
-                    .setCertainty((short) BlockCertaintyEnum.UNCERTAIN.getCertainty())
-                    .setDepotUpdatetime(new Date());
-            supplements.add(pool);
+                    .setCertainty((short) certainty)
+                    .setDepotUpdatetime(new Date()));
         }
-        return Optional.of(supplements);
+        return records;
     }
 
     public static boolean isComplete(long startBlockNumber, long currentMaxTaskPoolNumber) {
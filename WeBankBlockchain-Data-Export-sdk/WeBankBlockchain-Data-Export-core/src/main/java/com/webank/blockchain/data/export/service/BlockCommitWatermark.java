@@ -0,0 +1,83 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.export.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * BlockCommitWatermark lets blocks of a batch finish in any order while their DONE status is committed in height
+ * order: a finished block is only committed once every tracked block below it is settled, so the DONE records of
+ * the task pool always form a contiguous prefix of the batch.
+ */
+public class BlockCommitWatermark {
+
+    private final Deque<Long> pending = new ArrayDeque<>();
+
+    private final Map<Long, Boolean> settled = new HashMap<>();
+
+    private final Consumer<List<Long>> committer;
+
+    private volatile long watermark = -1;
+
+    public BlockCommitWatermark(Consumer<List<Long>> committer) {
+        this.committer = committer;
+    }
+
+    /**
+     * track a block which is about to be processed, heights must be tracked in ascending order.
+     *
+     * @param blockHeight
+     */
+    public synchronized void track(long blockHeight) {
+        pending.addLast(blockHeight);
+    }
+
+    /**
+     * settle a tracked block, and commit the DONE blocks which become contiguous with the watermark.
+     *
+     * @param blockHeight
+     * @param done false if the block failed and is already marked with an error status
+     */
+    public synchronized void settle(long blockHeight, boolean done) {
+        settled.put(blockHeight, done);
+        List<Long> commits = new ArrayList<>();
+        while (!pending.isEmpty() && settled.containsKey(pending.peekFirst())) {
+            long height = pending.pollFirst();
+            if (settled.remove(height)) {
+                commits.add(height);
+            }
+            watermark = height;
+        }
+        if (!commits.isEmpty()) {
+            committer.accept(commits);
+        }
+    }
+
+    /**
+     * @return the highest height below which every tracked block is settled, -1 if nothing is settled yet.
+     */
+    public long getWatermark() {
+        return watermark;
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+}
@@ -50,8 +50,10 @@ public class BlockCrawlService {
     public static BlockInfoBO parse(Block block) throws IOException {
         Stopwatch st1 = Stopwatch.createStarted();
         BlockInfoBO blockInfo = ParseFacade.parse(block);
+        long useTime = st1.stop().elapsed(TimeUnit.MILLISECONDS);
+        ExportConstant.getCurrentContext().getStageMetrics().recordParse(useTime);
         log.info("bcosCrawlerMap block:{} succeed, bcosCrawlerMap.handleReceipt useTime: {}",
-                block.getNumber().longValue(), st1.stop().elapsed(TimeUnit.MILLISECONDS));
+                block.getNumber().longValue(), useTime);
         return blockInfo;
     }
 
@@ -60,10 +62,15 @@ public class BlockCrawlService {
         log.debug("get block number: {}", blockHeightNumber);
         Block block = ExportConstant.getCurrentContext().getClient()
                 .getBlockByNumber(blockHeightNumber);
-        Stopwatch st1 = stopwatch.stop();
-        log.info("get block:{} succeed, eth.getBlock useTime: {}", blockHeightNumber,
-                st1.elapsed(TimeUnit.MILLISECONDS));
+        long useTime = stopwatch.stop().elapsed(TimeUnit.MILLISECONDS);
+        ExportConstant.getCurrentContext().getStageMetrics().recordFetch(useTime);
+        log.info("get block:{} succeed, eth.getBlock useTime: {}", blockHeightNumber, useTime);
         return block;
     }
 
+    public static Block getBlockHeader(BigInteger blockHeightNumber) {
+        log.debug("get block header number: {}", blockHeightNumber);
+        return ExportConstant.getCurrentContext().getClient().getBlockHeaderByNumber(blockHeightNumber);
+    }
+
 }
@@ -13,21 +13,32 @@
  */
 package com.webank.blockchain.data.export.service;
 
+import com.google.common.base.Stopwatch;
 import com.webank.blockchain.data.export.common.bo.data.BlockInfoBO;
+import com.webank.blockchain.data.export.common.bo.data.BlockRange;
 import com.webank.blockchain.data.export.common.client.ChainClient;
+import com.webank.blockchain.data.export.common.client.CodeCachingClient;
 import com.webank.blockchain.data.export.common.client.StashClient;
+import com.webank.blockchain.data.export.common.entity.ExportConfig;
 import com.webank.blockchain.data.export.common.entity.ExportConstant;
 import com.webank.blockchain.data.export.common.enums.TxInfoStatusEnum;
+import com.webank.blockchain.data.export.common.tools.BlockRangeUtils;
 import com.webank.blockchain.data.export.db.entity.BlockTaskPool;
+import com.webank.blockchain.data.export.db.repository.BlockTaskPoolRepository;
 import com.webank.blockchain.data.export.task.DataPersistenceManager;
+import com.webank.blockchain.data.export.tools.ExecutorUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.Block;
 
 import java.io.IOException;
-import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * BlockSyncService
@@ -40,35 +51,154 @@ import java.util.List;
 @Slf4j
 public class BlockDepotService {
 
+    private static final Object CLAIM_LOCK = new Object();
+
     public static List<Block> fetchData(int count) {
         List<BlockTaskPool> tasks = DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository()
                 .findBySyncStatusOrderByBlockHeightLimit((short) TxInfoStatusEnum.INIT.getStatus(), count);
         return getTasks(tasks);
     }
 
+    /**
+     * claim at most count INIT tasks and mark them DOING before their blocks are fetched.
+     *
+     * @param count
+     * @return the claimed tasks
+     */
+    public static List<BlockTaskPool> claimTasks(int count) {
+        return claimTasks(0, Long.MAX_VALUE, count);
+    }
+
+    /**
+     * claim at most count INIT tasks between fromHeight and toHeight, claims of the lanes of a single instance are
+     * serialized so that a task is never claimed twice.
+     *
+     * @param fromHeight
+     * @param toHeight
+     * @param count
+     * @return the claimed tasks
+     */
+    public static List<BlockTaskPool> claimTasks(long fromHeight, long toHeight, int count) {
+        synchronized (CLAIM_LOCK) {
+            List<BlockTaskPool> tasks = DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository()
+                    .findBySyncStatusAndBlockHeightRangeOrderByBlockHeightLimit(
+                            (short) TxInfoStatusEnum.INIT.getStatus(), fromHeight, toHeight, count);
+            markDoing(tasks);
+            return tasks;
+        }
+    }
+
     public static List<Block> getTasks(List<BlockTaskPool> tasks) {
-        List<Block> result = new ArrayList<>();
-        List<BlockTaskPool> pools = new ArrayList<>();
+        markDoing(tasks);
+        return fetchBlocks(tasks);
+    }
+
+    private static void markDoing(List<BlockTaskPool> tasks) {
+        Date now = new Date();
         for (BlockTaskPool task : tasks) {
-            task.setSyncStatus((short) TxInfoStatusEnum.DOING.getStatus()).setDepotUpdatetime(new Date());
-            BigInteger bigBlockHeight = new BigInteger(Long.toString(task.getBlockHeight()));
-            Block block;
-            try {
-                block = BlockCrawlService.getBlock(bigBlockHeight);
-                result.add(block);
-                pools.add(task);
-            } catch (IOException e) {
-                log.error("Block {},  exception occur in job processing: {}", task.getBlockHeight(), e.getMessage());
-                DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository()
-                        .setSyncStatusByBlockHeight((short) TxInfoStatusEnum.ERROR.getStatus(),
-                        new Date(), task.getBlockHeight());
+            task.setSyncStatus((short) TxInfoStatusEnum.DOING.getStatus()).setDepotUpdatetime(now);
+        }
+        DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository().setSyncStatusByBlockHeights(
+                (short) TxInfoStatusEnum.DOING.getStatus(), now,
+                tasks.stream().map(BlockTaskPool::getBlockHeight).collect(Collectors.toList()));
+    }
+
+    /**
+     * lease the next count INIT tasks to a sharding item of the multi-living depot job, from the height segments of
+     * segmentSize owned by segmentItem, which is the item itself unless it steals from a slower peer. The segment at
+     * the top of the task pool is still being prepared, it is shared by all the items so that the new heights at the
+     * chain head are not left to a single item. The lease expires after BlockConstants.DEPOT_TIME_OUT seconds, when
+     * the timeout check hands the unfinished tasks over again.
+     *
+     * @param shardingItem the item taking the lease
+     * @param segmentItem the item owning the segments
+     * @param shardingTotalCount
+     * @param leaseTime the start of the lease
+     * @param count
+     * @return the leased tasks in DOING status
+     */
+    public static List<BlockTaskPool> leaseTasks(int shardingItem, int segmentItem, int shardingTotalCount,
+                                                 Date leaseTime, int count) {
+        ExportConfig config = ExportConstant.getCurrentContext().getConfig();
+        BlockTaskPoolRepository repository = DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository();
+        short init = (short) TxInfoStatusEnum.INIT.getStatus();
+        Optional<Long> lowest = repository.findMinBlockHeightBySyncStatus(init);
+        BlockTaskPool top = repository.findTopByOrderByBlockHeightDesc();
+        if (!lowest.isPresent() || top == null) {
+            return new ArrayList<>();
+        }
+        long segmentSize = config.getDataFlowJobSegmentSize();
+        long tipFrom = top.getBlockHeight() / segmentSize * segmentSize;
+        int batchSize = Math.max(1, config.getTaskPoolBatchSize());
+        long from = lowest.get();
+        while (from < tipFrom) {
+            List<BlockRange> ranges = BlockRangeUtils.segments(from, tipFrom - 1, segmentSize, shardingTotalCount,
+                    segmentItem, batchSize);
+            if (ranges.isEmpty()) {
+                break;
             }
+            List<BlockTaskPool> tasks = repository.leaseBySyncStatusAndBlockHeightRangesOrderByBlockHeightLimit(init,
+                    ranges, shardingItem, leaseTime, count);
+            if (!tasks.isEmpty()) {
+                return tasks;
+            }
+            from = ranges.get(ranges.size() - 1).getTo() + 1;
+        }
+        return repository.leaseBySyncStatusAndBlockHeightRangesOrderByBlockHeightLimit(init,
+                Collections.singletonList(new BlockRange(Math.max(from, tipFrom), top.getBlockHeight())),
+                shardingItem, leaseTime, count);
+    }
+
+    /**
+     * @return the INIT tasks left in the height segments of a sharding item, below the shared segment at the top
+     */
+    public static long countBacklog(int shardingItem, int shardingTotalCount) {
+        ExportConfig config = ExportConstant.getCurrentContext().getConfig();
+        BlockTaskPoolRepository repository = DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository();
+        short init = (short) TxInfoStatusEnum.INIT.getStatus();
+        Optional<Long> lowest = repository.findMinBlockHeightBySyncStatus(init);
+        BlockTaskPool top = repository.findTopByOrderByBlockHeightDesc();
+        if (!lowest.isPresent() || top == null) {
+            return 0;
+        }
+        long segmentSize = config.getDataFlowJobSegmentSize();
+        long tipFrom = top.getBlockHeight() / segmentSize * segmentSize;
+        int batchSize = Math.max(1, config.getTaskPoolBatchSize());
+        long backlog = 0;
+        long from = lowest.get();
+        while (from < tipFrom) {
+            List<BlockRange> ranges = BlockRangeUtils.segments(from, tipFrom - 1, segmentSize, shardingTotalCount,
+                    shardingItem, batchSize);
+            if (ranges.isEmpty()) {
+                break;
+            }
+            backlog += repository.countBySyncStatusAndBlockHeightRanges(init, ranges);
+            from = ranges.get(ranges.size() - 1).getTo() + 1;
+        }
+        return backlog;
+    }
+
+    public static List<Block> fetchBlocks(List<BlockTaskPool> tasks) {
+        List<Block> result = new ArrayList<>();
+        try (BlockPrefetcher prefetcher = prefetch(tasks)) {
+            prefetcher.forEachRemaining(result::add);
         }
-        DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository().saveAll(pools);
         log.info("Successful fetch {} Blocks.", result.size());
         return result;
     }
 
+    /**
+     * fetch the blocks of the claimed tasks ahead of the consumer, with at most prefetchWindow requests in flight.
+     *
+     * @param tasks claimed tasks in DOING status
+     * @return the prefetcher, which must be closed by the consumer
+     */
+    public static BlockPrefetcher prefetch(List<BlockTaskPool> tasks) {
+        ExportConfig config = ExportConstant.getCurrentContext().getConfig();
+        ExecutorService pool = ExecutorUtils.getSharedPool("block-prefetch", config.getPrefetchThreadCount());
+        return new BlockPrefetcher(tasks, pool, config.getPrefetchWindow(), config.getPrefetchMemoryBudget());
+    }
+
     public static void processDataSequence(List<Block> data, long total) {
         for (Block b : data) {
             process(b, total);
@@ -78,23 +208,119 @@ public class BlockDepotService {
     public static void process(Block b, long total) {
         try {
             BlockInfoBO blockInfo = BlockCrawlService.parse(b);
-            BlockStoreService.store(blockInfo);
-            BlockListenerService.onBlock(blockInfo);
-            DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository()
-                    .setSyncStatusByBlockHeight((short) TxInfoStatusEnum.DONE.getStatus(), new Date(),
-                    b.getNumber().longValue());
+            store(blockInfo);
+            markDone(b.getNumber().longValue());
             log.info("Block {} of {} sync block succeed.", b.getNumber().longValue(), total);
         } catch (IOException e) {
             log.error("block {}, exception occur in job processing: {}", b.getNumber().longValue(), e.getMessage());
-            DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository()
-                    .setSyncStatusByBlockHeight((short) TxInfoStatusEnum.ERROR.getStatus(), new Date(),
-                    b.getNumber().longValue());
+            markError(b.getNumber().longValue());
         }
         clearCache(b.getNumber().longValue());
     }
 
-    private static void clearCache(long blockNumber) {
+    /**
+     * process a block of a task leased to handleItem from leaseTime, its status is only written while the lease is
+     * held. Once the timeout check has handed the task over, its status is left to the new holder.
+     *
+     * @param b
+     * @param total
+     * @param handleItem
+     * @param leaseTime
+     * @return false if the lease is lost, the caller should stop processing the rest of the lease
+     */
+    public static boolean process(Block b, long total, int handleItem, Date leaseTime) {
+        long blockHeight = b.getNumber().longValue();
+        boolean held;
+        try {
+            BlockInfoBO blockInfo = BlockCrawlService.parse(b);
+            store(blockInfo);
+            held = markDone(blockHeight, handleItem, leaseTime);
+            if (held) {
+                log.info("Block {} of {} sync block succeed.", blockHeight, total);
+            }
+        } catch (IOException e) {
+            log.error("block {}, exception occur in job processing: {}", blockHeight, e.getMessage());
+            held = markError(blockHeight, handleItem, leaseTime);
+        }
+        clearCache(blockHeight);
+        if (!held) {
+            log.warn("Block {} is no longer leased to item {} from {}, its status is left to the new holder",
+                    blockHeight, handleItem, leaseTime);
+        }
+        return held;
+    }
+
+    /**
+     * store a parsed block and notify the subscribers, the task status is left to the caller, which must only mark
+     * it DONE after this returns.
+     *
+     * @param blockInfo
+     */
+    public static void store(BlockInfoBO blockInfo) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        BlockStoreService.store(blockInfo);
+        BlockListenerService.onBlock(blockInfo);
+        ExportConstant.getCurrentContext().getStageMetrics()
+                .recordStore(stopwatch.stop().elapsed(TimeUnit.MILLISECONDS));
+    }
+
+    public static void markDone(long blockHeight) {
+        DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository()
+                .setSyncStatusByBlockHeight((short) TxInfoStatusEnum.DONE.getStatus(), new Date(), blockHeight);
+        ExportConstant.getCurrentContext().getRetryScheduler().onSuccess(blockHeight);
+    }
+
+    public static void markDone(List<Long> blockHeights) {
+        DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository()
+                .setSyncStatusByBlockHeights((short) TxInfoStatusEnum.DONE.getStatus(), new Date(), blockHeights);
+        ExportConstant.getCurrentContext().getRetryScheduler().onSuccess(blockHeights);
+    }
+
+    public static void markError(long blockHeight) {
+        DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository()
+                .setSyncStatusByBlockHeight((short) TxInfoStatusEnum.ERROR.getStatus(), new Date(), blockHeight);
+    }
+
+    /**
+     * @return false if the task is no longer leased to handleItem from leaseTime
+     */
+    public static boolean markDone(long blockHeight, int handleItem, Date leaseTime) {
+        boolean held = DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository()
+                .setSyncStatusByBlockHeightAndLease((short) TxInfoStatusEnum.DONE.getStatus(), new Date(),
+                        blockHeight, handleItem, leaseTime);
+        if (held) {
+            ExportConstant.getCurrentContext().getRetryScheduler().onSuccess(blockHeight);
+        }
+        return held;
+    }
+
+    /**
+     * @return false if the task is no longer leased to handleItem from leaseTime
+     */
+    public static boolean markError(long blockHeight, int handleItem, Date leaseTime) {
+        return DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository()
+                .setSyncStatusByBlockHeightAndLease((short) TxInfoStatusEnum.ERROR.getStatus(), new Date(),
+                        blockHeight, handleItem, leaseTime);
+    }
+
+    /**
+     * mark a task ERROR, in multi living mode only while it is still leased as it was when read.
+     *
+     * @param task
+     */
+    public static void markError(BlockTaskPool task) {
+        if (ExportConstant.getCurrentContext().getConfig().isMultiLiving()) {
+            markError(task.getBlockHeight(), task.getHandleItem(), task.getDepotUpdatetime());
+        } else {
+            markError(task.getBlockHeight());
+        }
+    }
+
+    public static void clearCache(long blockNumber) {
         ChainClient chainClient = ExportConstant.getCurrentContext().getClient();
+        if (chainClient instanceof CodeCachingClient) {
+            chainClient = ((CodeCachingClient) chainClient).getDelegate();
+        }
         if (!(chainClient instanceof StashClient)) {
             return;
         }
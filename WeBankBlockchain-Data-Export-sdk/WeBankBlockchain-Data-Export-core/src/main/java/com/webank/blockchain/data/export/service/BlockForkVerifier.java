@@ -0,0 +1,132 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.export.service;
+
+import com.webank.blockchain.data.export.common.entity.ExportConstant;
+import com.webank.blockchain.data.export.db.repository.BlockDetailInfoRepository;
+import com.webank.blockchain.data.export.task.DataPersistenceManager;
+import com.webank.blockchain.data.export.tools.ExecutorUtils;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.Block;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * BlockForkVerifier checks a batch of synced blocks against the chain. The stored hashes are read in one query and
+ * only the block headers are requested from the node, concurrently. The headers are walked in height order, checking
+ * that adjacent headers link by parent hash, so the first height whose stored hash differs is the fork point and
+ * every verified height above it is forked as well.
+ */
+@Slf4j
+public class BlockForkVerifier {
+
+    private static final AtomicBoolean HASH_UNAVAILABLE_LOGGED = new AtomicBoolean();
+
+    @Data
+    public static class VerifyResult {
+        private List<Long> fixedBlocks = new ArrayList<>();
+        private List<Long> forkedBlocks = new ArrayList<>();
+    }
+
+    /**
+     * verify the blocks, heights which can not be verified this time, e.g. whose header is not fetched or whose hash
+     * is not stored, are in neither list of the result and stay uncertain. If the block detail info table is not
+     * exported, no hash can ever be compared, so the blocks are fixed by their depth alone as before.
+     */
+    public static VerifyResult verify(List<Long> blockHeights) {
+        VerifyResult result = new VerifyResult();
+        if (blockHeights.isEmpty()) {
+            return result;
+        }
+        BlockDetailInfoRepository blockDetailInfoRepository =
+                DataPersistenceManager.getCurrentManager().getBlockDetailInfoRepository();
+        if (blockDetailInfoRepository == null) {
+            if (HASH_UNAVAILABLE_LOGGED.compareAndSet(false, true)) {
+                log.warn("The block detail info table is not exported, blocks are fixed without checking forks");
+            }
+            result.getFixedBlocks().addAll(blockHeights);
+            return result;
+        }
+        List<Long> heights = new ArrayList<>(blockHeights);
+        Collections.sort(heights);
+        Map<Long, String> storedHashes = blockDetailInfoRepository.findBlockHashByBlockHeightRange(heights.get(0),
+                heights.get(heights.size() - 1));
+        Map<Long, Block> headers = fetchHeaders(heights);
+        Block previous = null;
+        for (int i = 0; i < heights.size(); i++) {
+            long blockHeight = heights.get(i);
+            Block header = headers.get(blockHeight);
+            if (header == null) {
+                log.error("Block {} header is not fetched, stop checking forks at it", blockHeight);
+                break;
+            }
+            if (previous != null && previous.getNumber().longValue() == blockHeight - 1
+                    && !previous.getHash().equals(header.getParentHash())) {
+                log.warn("Block {} does not link to block {}, the chain is changing, stop checking forks at it",
+                        blockHeight, blockHeight - 1);
+                break;
+            }
+            String storedHash = storedHashes.get(blockHeight);
+            if (storedHash == null) {
+                log.warn("Block {} has no stored hash to check with, stop checking forks at it", blockHeight);
+                break;
+            }
+            if (!storedHash.equals(header.getHash())) {
+                log.info("Block {} is forked!!! ready to resync from it to {}", blockHeight,
+                        heights.get(heights.size() - 1));
+                result.getForkedBlocks().addAll(heights.subList(i, heights.size()));
+                return result;
+            }
+            log.debug("Block {} is not forked!", blockHeight);
+            result.getFixedBlocks().add(blockHeight);
+            previous = header;
+        }
+        return result;
+    }
+
+    private static Map<Long, Block> fetchHeaders(List<Long> heights) {
+        int threads = Math.max(1, ExportConstant.getCurrentContext().getConfig().getForkCheckThreadCount());
+        ExecutorService pool = ExecutorUtils.getSharedPool("fork-check", threads);
+        List<Future<Block>> futures = new ArrayList<>(heights.size());
+        for (long blockHeight : heights) {
+            futures.add(pool.submit(ExecutorUtils.wrap(
+                    () -> BlockCrawlService.getBlockHeader(BigInteger.valueOf(blockHeight)))));
+        }
+        Map<Long, Block> headers = new HashMap<>();
+        for (int i = 0; i < heights.size(); i++) {
+            try {
+                Block header = futures.get(i).get();
+                if (header != null) {
+                    headers.put(heights.get(i), header);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(future -> future.cancel(true));
+                break;
+            } catch (Exception e) {
+                log.error("Block {} header fetch failed: {}", heights.get(i), e.getMessage());
+            }
+        }
+        return headers;
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.export.service;
+
+import com.webank.blockchain.data.export.db.entity.BlockTaskPool;
+import com.webank.blockchain.data.export.tools.ExecutorUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.Block;
+import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.TransactionObject;
+import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.TransactionResult;
+
+import java.io.Closeable;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BlockPrefetcher iterates over the blocks of the tasks in height order, while keeping up to window
+ * getBlockByNumber requests in flight ahead of the consumer. Fetched but not yet consumed blocks are kept within
+ * memoryBudget bytes (estimated), no new request is issued while the budget is used up. Tasks whose block can't be
+ * fetched are marked ERROR and skipped. The requests run on a pool shared by all the prefetchers of the context.
+ */
+@Slf4j
+public class BlockPrefetcher implements Iterator<Block>, Closeable {
+
+    private static final long BLOCK_OVERHEAD = 2048;
+
+    private static final long TRANSACTION_OVERHEAD = 1024;
+
+    private final Iterator<BlockTaskPool> tasks;
+
+    private final int window;
+
+    private final long memoryBudget;
+
+    private final ExecutorService pool;
+
+    private final Deque<Future<Block>> prefetched = new ArrayDeque<>();
+
+    private final AtomicLong bufferedBytes = new AtomicLong();
+
+    private Block nextBlock;
+
+    private boolean interrupted;
+
+    public BlockPrefetcher(List<BlockTaskPool> tasks, ExecutorService pool, int window, long memoryBudget) {
+        this.tasks = tasks.iterator();
+        this.pool = pool;
+        this.window = window;
+        this.memoryBudget = memoryBudget;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (nextBlock == null && !interrupted) {
+            fill();
+            Future<Block> future = prefetched.pollFirst();
+            if (future == null) {
+                return false;
+            }
+            try {
+                Block block = future.get();
+                if (block != null) {
+                    bufferedBytes.addAndGet(-estimateSize(block));
+                    nextBlock = block;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                interrupted = true;
+            } catch (ExecutionException e) {
+                log.error("block prefetch failed ", e);
+            }
+        }
+        return nextBlock != null;
+    }
+
+    @Override
+    public Block next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Block block = nextBlock;
+        nextBlock = null;
+        fill();
+        return block;
+    }
+
+    @Override
+    public void close() {
+        // the pool is shared, only the requests of this prefetcher are cancelled
+        prefetched.forEach(future -> future.cancel(true));
+        prefetched.clear();
+    }
+
+    public long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    private void fill() {
+        while (tasks.hasNext()
+                && (prefetched.isEmpty() || (prefetched.size() < window && bufferedBytes.get() < memoryBudget))) {
+            BlockTaskPool task = tasks.next();
+            prefetched.addLast(pool.submit(ExecutorUtils.wrap(() -> fetch(task))));
+        }
+    }
+
+    private Block fetch(BlockTaskPool task) {
+        long blockHeight = task.getBlockHeight();
+        try {
+            Block block = BlockCrawlService.getBlock(BigInteger.valueOf(blockHeight));
+            if (block != null) {
+                bufferedBytes.addAndGet(estimateSize(block));
+                return block;
+            }
+            log.error("Block {}, fetch returns nothing", blockHeight);
+        } catch (Exception e) {
+            log.error("Block {},  exception occur in job processing: {}", blockHeight, e.getMessage());
+        }
+        BlockDepotService.markError(task);
+        return null;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static long estimateSize(Block block) {
+        long size = BLOCK_OVERHEAD;
+        if (block.getTransactions() == null) {
+            return size;
+        }
+        for (TransactionResult result : block.getTransactions()) {
+            size += TRANSACTION_OVERHEAD;
+            if (result instanceof TransactionObject && ((TransactionObject) result).getInput() != null) {
+                size += ((TransactionObject) result).getInput().length();
+            }
+        }
+        return size;
+    }
+}
@@ -20,6 +20,7 @@ import com.webank.blockchain.data.export.common.entity.ExportConstant;
 import com.webank.blockchain.data.export.common.enums.BlockCertaintyEnum;
 import com.webank.blockchain.data.export.common.enums.TxInfoStatusEnum;
 import com.webank.blockchain.data.export.db.entity.BlockTaskPool;
+import com.webank.blockchain.data.export.db.repository.BlockTaskPoolRepository;
 import com.webank.blockchain.data.export.task.DataPersistenceManager;
 import lombok.extern.slf4j.Slf4j;
 
@@ -27,6 +28,8 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * BlockPrepareService
@@ -79,4 +82,29 @@ public class BlockPrepareService {
         log.info("Sync blocks from {} to {} are prepared.", begin, end);
     }
 
+    /**
+     * prepare the FIXED tasks of a historical range which are not in the task pool yet, existing tasks are kept.
+     *
+     * @param begin
+     * @param end
+     */
+    public static void prepareMissingTasks(long begin, long end) {
+        BlockTaskPoolRepository repository = DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository();
+        if (repository.countByBlockHeightRange(begin, end) == end - begin + 1) {
+            return;
+        }
+        Set<Long> existing = repository.findByBlockHeightRange(begin, end).stream()
+                .map(BlockTaskPool::getBlockHeight).collect(Collectors.toSet());
+        List<BlockTaskPool> list = Lists.newArrayList();
+        for (long i = begin; i <= end; i++) {
+            if (existing.contains(i)) {
+                continue;
+            }
+            list.add(new BlockTaskPool().setBlockHeight(i).setSyncStatus((short) TxInfoStatusEnum.INIT.getStatus())
+                    .setCertainty((short) BlockCertaintyEnum.FIXED.getCertainty()).setDepotUpdatetime(new Date()));
+        }
+        repository.saveAll(list);
+        log.info("{} missing sync blocks from {} to {} are prepared.", list.size(), begin, end);
+    }
+
 }
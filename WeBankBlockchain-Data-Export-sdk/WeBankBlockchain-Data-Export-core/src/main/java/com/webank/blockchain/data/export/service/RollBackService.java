@@ -13,7 +13,21 @@
  */
 package com.webank.blockchain.data.export.service;
 
+import cn.hutool.db.Db;
+import com.webank.blockchain.data.export.common.bo.data.BlockRange;
+import com.webank.blockchain.data.export.common.entity.ExportConstant;
+import com.webank.blockchain.data.export.common.tools.BlockRangeUtils;
+import com.webank.blockchain.data.export.db.repository.RollbackInterface;
 import com.webank.blockchain.data.export.task.DataPersistenceManager;
+import com.webank.blockchain.data.export.tools.ExecutorUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * RollBackService, rollback
@@ -23,18 +37,67 @@ import com.webank.blockchain.data.export.task.DataPersistenceManager;
  * @data 2018-12-27 15:59:41
  *
  */
+@Slf4j
 public class RollBackService {
 
+    private static final int MAX_ROLLBACK_THREADS = 4;
+
     /**
      * Do rollback, including events, methods, accounts, and details.
      * 
      * @param
      */
     public static void rollback(long start, long end) {
-        DataPersistenceManager.getCurrentManager().getRollbackOneInterfaceList()
-                .forEach(v -> {
-            v.rollback(start, end);
-        });
+        rollbackRanges(Collections.singletonList(new BlockRange(start, end - 1)));
+    }
+
+    /**
+     * rollback the given heights, which are merged into ranges first.
+     *
+     * @param blockHeights
+     */
+    public static void rollbackBlocks(Collection<Long> blockHeights) {
+        if (blockHeights.isEmpty()) {
+            return;
+        }
+        rollbackRanges(BlockRangeUtils.merge(blockHeights));
+    }
+
+    /**
+     * rollback the ranges from every table, the tables are rolled back in parallel on a pool shared by the context,
+     * each of them in one transaction deleting all the ranges, which is rolled back as a whole if a delete fails.
+     *
+     * @param ranges
+     */
+    public static void rollbackRanges(List<BlockRange> ranges) {
+        List<RollbackInterface> tables = DataPersistenceManager.getCurrentManager().getRollbackOneInterfaceList();
+        if (ranges.isEmpty() || tables.isEmpty()) {
+            return;
+        }
+        log.info("Rollback {} ranges from {} to {} of {} tables", ranges.size(), ranges.get(0).getFrom(),
+                ranges.get(ranges.size() - 1).getTo(), tables.size());
+        ExecutorService pool = ExecutorUtils.getSharedPool("rollback", MAX_ROLLBACK_THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>(tables.size());
+            for (RollbackInterface table : tables) {
+                futures.add(pool.submit(ExecutorUtils.wrap(() -> rollback(table, ranges))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Rollback ranges failed ", e);
+        }
+    }
+
+    private static void rollback(RollbackInterface table, List<BlockRange> ranges) {
+        try {
+            Db.use(ExportConstant.getCurrentContext().getDataSource()).tx(db -> table.rollback(db, ranges));
+        } catch (Exception e) {
+            log.error("Rollback {} failed ", table.getTableName(), e);
+        }
     }
 
 }
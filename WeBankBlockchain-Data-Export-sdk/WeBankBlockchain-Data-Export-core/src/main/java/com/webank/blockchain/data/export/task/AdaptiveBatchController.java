@@ -0,0 +1,130 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.export.task;
+
+import com.webank.blockchain.data.export.common.entity.ExportConfig;
+import com.webank.blockchain.data.export.common.entity.StageMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * AdaptiveBatchController resizes the crawl batch unit and the depot thread count after each batch.
+ *
+ * <p>The batch unit aims at batches taking about targetBatchMillis at the measured per block cost, but never
+ * exceeds the distance to the chain head, so it is large while catching up and small at the tip. The thread count
+ * is hill climbed on the measured throughput while catching up, and is not raised while fetching is slower than
+ * parsing and storing, since more depot threads would only wait for blocks. Fetching is measured against the blocks
+ * in flight, which is the prefetch window bounded by the prefetch threads.
+ *
+ * <p>In pipeline mode the stage pools are sized by their own thread counts, so only the batch unit adapts there.
+ */
+@Slf4j
+public class AdaptiveBatchController {
+
+    private static final double TOLERANCE = 0.05;
+
+    private final int minBatchUnit;
+    private final int maxBatchUnit;
+    private final int maxThreadCount;
+    private final int fetchConcurrency;
+    private final boolean threadCountAdaptive;
+    private final long targetBatchMillis;
+    private final StageMetrics stageMetrics;
+
+    private volatile int batchUnit;
+    private volatile int threadCount;
+    private volatile double throughput;
+
+    private int direction = 1;
+
+    public static AdaptiveBatchController create(ExportConfig config, StageMetrics stageMetrics) {
+        return new AdaptiveBatchController(config, stageMetrics);
+    }
+
+    private AdaptiveBatchController(ExportConfig config, StageMetrics stageMetrics) {
+        this.minBatchUnit = config.getMinCrawlBatchUnit();
+        this.maxBatchUnit = config.getMaxCrawlBatchUnit();
+        this.maxThreadCount = config.getMaxDepotThreadCount();
+        this.fetchConcurrency = Math.max(1, Math.min(config.getPrefetchWindow(), config.getPrefetchThreadCount()));
+        this.threadCountAdaptive = !config.isPipelineEnabled();
+        this.targetBatchMillis = config.getTargetBatchMillis();
+        this.stageMetrics = stageMetrics;
+        this.batchUnit = clamp(config.getCrawlBatchUnit(), minBatchUnit, maxBatchUnit);
+        this.threadCount = clamp(config.getDepotThreadCount(), 1, maxThreadCount);
+    }
+
+    /**
+     * feed the result of a batch.
+     *
+     * @param distance blocks between the start of the batch and the chain head
+     * @param processed blocks processed by the batch
+     * @param elapsedMillis time the batch took
+     */
+    public synchronized void update(long distance, int processed, long elapsedMillis) {
+        if (processed <= 0 || elapsedMillis <= 0) {
+            batchUnit = clamp(distance, minBatchUnit, batchUnit);
+            return;
+        }
+        double perBlockMillis = (double) elapsedMillis / processed;
+        long target = Math.min((long) (targetBatchMillis / perBlockMillis), distance);
+        // grow at most twice per batch, but shrink at once when the head is near
+        batchUnit = clamp(Math.min(target, 2L * batchUnit), minBatchUnit, maxBatchUnit);
+
+        double current = processed * 1000.0 / elapsedMillis;
+        if (threadCountAdaptive) {
+            updateThreadCount(distance, current);
+        }
+        throughput = current;
+        log.info("Adaptive batch unit is {}, depot thread count is {}, throughput is {} blocks/s, "
+                        + "fetch/parse/store latency is {}/{}/{} ms", batchUnit, threadCount,
+                String.format("%.2f", current), (long) stageMetrics.getFetchLatency(),
+                (long) stageMetrics.getParseLatency(), (long) stageMetrics.getStoreLatency());
+    }
+
+    private void updateThreadCount(long distance, double current) {
+        if (distance <= batchUnit) {
+            threadCount = clamp(Math.min(distance, threadCount), 1, maxThreadCount);
+            return;
+        }
+        if (current < throughput * (1 - TOLERANCE)) {
+            direction = -direction;
+        }
+        boolean fetchBound = stageMetrics.getFetchLatency() / fetchConcurrency
+                > stageMetrics.getParseLatency() + stageMetrics.getStoreLatency();
+        if (current < throughput * (1 - TOLERANCE) || current > throughput * (1 + TOLERANCE)) {
+            if (direction > 0 && fetchBound) {
+                direction = -1;
+            }
+            threadCount = clamp(threadCount + direction, 1, maxThreadCount);
+        }
+    }
+
+    public int getBatchUnit() {
+        return batchUnit;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @return blocks per second of the last batch
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    private static int clamp(long value, int min, int max) {
+        return (int) Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.export.task;
+
+import com.webank.blockchain.data.export.common.bo.data.BlockInfoBO;
+import com.webank.blockchain.data.export.common.entity.ExportConfig;
+import com.webank.blockchain.data.export.db.entity.BlockTaskPool;
+import com.webank.blockchain.data.export.service.BlockCrawlService;
+import com.webank.blockchain.data.export.service.BlockDepotService;
+import com.webank.blockchain.data.export.service.BlockPrefetcher;
+import com.webank.blockchain.data.export.service.BlockPrepareService;
+import com.webank.blockchain.data.export.tools.ExecutorUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.Block;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BackfillLane is the throughput lane of the dual lane mode. It splits the historical range [fromHeight, toHeight],
+ * whose blocks are beyond fork, into chunks which are prepared and processed in parallel, while CrawlRunner keeps
+ * following the chain tip above toHeight. Both lanes share the task pool, so the chunks are prepared as FIXED tasks
+ * and claimed through BlockDepotService like any other task. Once every chunk is done, the INIT tasks left in the
+ * range, e.g. reset by BlockCheckService after an error, are swept up and the lane finishes.
+ */
+@Slf4j
+public class BackfillLane {
+
+    private static final long SHUTDOWN_WAIT_SECONDS = 10;
+
+    private final long fromHeight;
+    private final long toHeight;
+    private final int chunkSize;
+    private final int threadCount;
+    private final int claimCount;
+    private final AtomicBoolean runSwitch;
+
+    private final AtomicLong cursor;
+    private final ExecutorService pool;
+
+    private volatile boolean finished;
+
+    public static BackfillLane create(ExportConfig config, long fromHeight, long toHeight, AtomicBoolean runSwitch) {
+        return new BackfillLane(config, fromHeight, toHeight, runSwitch);
+    }
+
+    private BackfillLane(ExportConfig config, long fromHeight, long toHeight, AtomicBoolean runSwitch) {
+        this.fromHeight = fromHeight;
+        this.toHeight = toHeight;
+        this.chunkSize = config.getBackfillChunkSize();
+        this.threadCount = config.getBackfillThreadCount();
+        this.claimCount = config.getCrawlBatchUnit();
+        this.runSwitch = runSwitch;
+        this.cursor = new AtomicLong(fromHeight);
+        this.pool = ExecutorUtils.newFixedThreadPool("backfill-lane", threadCount + 1);
+    }
+
+    public void start() {
+        log.info("Backfill lane starts from {} to {} with {} threads", fromHeight, toHeight, threadCount);
+        CountDownLatch chunksDone = new CountDownLatch(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            pool.execute(ExecutorUtils.wrap(() -> {
+                try {
+                    processChunks();
+                } finally {
+                    chunksDone.countDown();
+                }
+            }));
+        }
+        pool.execute(ExecutorUtils.wrap(() -> {
+            try {
+                chunksDone.await();
+                if (isRunning()) {
+                    processRange(fromHeight, toHeight);
+                    finished = true;
+                    log.info("Backfill lane from {} to {} is finished", fromHeight, toHeight);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+    }
+
+    public long getFromHeight() {
+        return fromHeight;
+    }
+
+    public long getToHeight() {
+        return toHeight;
+    }
+
+    /**
+     * @return the lowest height whose chunk is not handed out yet
+     */
+    public long getCursor() {
+        return Math.min(cursor.get(), toHeight + 1);
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * stop the lane and wait a while for the chunks in flight, so that a checkpoint afterwards sees their status.
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+        try {
+            if (!pool.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Backfill lane is not terminated in {} s", SHUTDOWN_WAIT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void processChunks() {
+        while (isRunning()) {
+            long begin = cursor.getAndAdd(chunkSize);
+            if (begin > toHeight) {
+                return;
+            }
+            long end = Math.min(begin + chunkSize - 1, toHeight);
+            try {
+                BlockPrepareService.prepareMissingTasks(begin, end);
+                processRange(begin, end);
+            } catch (Exception e) {
+                log.error("Backfill chunk from {} to {} failed ", begin, end, e);
+            }
+        }
+    }
+
+    private void processRange(long begin, long end) {
+        while (isRunning()) {
+            List<BlockTaskPool> tasks = BlockDepotService.claimTasks(begin, end, claimCount);
+            if (tasks.isEmpty()) {
+                return;
+            }
+            List<Long> doneBlocks = new ArrayList<>(tasks.size());
+            try (BlockPrefetcher prefetcher = BlockDepotService.prefetch(tasks)) {
+                while (prefetcher.hasNext()) {
+                    Block block = prefetcher.next();
+                    if (handle(block)) {
+                        doneBlocks.add(block.getNumber().longValue());
+                    }
+                }
+            } finally {
+                BlockDepotService.markDone(doneBlocks);
+            }
+        }
+    }
+
+    private boolean handle(Block block) {
+        long blockHeight = block.getNumber().longValue();
+        boolean done = false;
+        try {
+            BlockInfoBO blockInfo = BlockCrawlService.parse(block);
+            BlockDepotService.store(blockInfo);
+            log.info("Block {} of backfill {} sync block succeed.", blockHeight, toHeight);
+            done = true;
+        } catch (Exception e) {
+            log.error("block {}, exception occur in backfill processing: {}", blockHeight, e.getMessage());
+            BlockDepotService.markError(blockHeight);
+        }
+        BlockDepotService.clearCache(blockHeight);
+        return done;
+    }
+
+    private boolean isRunning() {
+        return runSwitch.get() && !Thread.currentThread().isInterrupted();
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.export.task;
+
+import com.webank.blockchain.data.export.common.client.BlockNotifier;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * BlockNotifyWaiter lets the crawl loop wait for the next block at the chain tip. With a notifier it wakes up as
+ * soon as a higher block is notified, without one it simply waits the whole timeout, like the former sleep polling.
+ */
+public class BlockNotifyWaiter {
+
+    private final BlockNotifier notifier;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition newBlock = lock.newCondition();
+
+    private long notifiedHeight = -1;
+
+    public static BlockNotifyWaiter create(BlockNotifier notifier) {
+        BlockNotifyWaiter waiter = new BlockNotifyWaiter(notifier);
+        if (notifier != null) {
+            notifier.subscribe(waiter::onBlock);
+        }
+        return waiter;
+    }
+
+    private BlockNotifyWaiter(BlockNotifier notifier) {
+        this.notifier = notifier;
+    }
+
+    public void onBlock(long blockHeight) {
+        lock.lock();
+        try {
+            if (blockHeight > notifiedHeight) {
+                notifiedHeight = blockHeight;
+                newBlock.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * wait until a block higher than blockHeight is notified, or the timeout passes.
+     *
+     * @return true if woken up by a notification
+     */
+    public boolean await(long blockHeight, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (notifiedHeight <= blockHeight) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = newBlock.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isPushEnabled() {
+        return notifier != null;
+    }
+
+    public void close() {
+        if (notifier != null) {
+            notifier.unsubscribe();
+        }
+    }
+}
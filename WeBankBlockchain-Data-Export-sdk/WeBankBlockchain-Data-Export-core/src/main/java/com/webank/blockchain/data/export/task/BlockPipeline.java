@@ -0,0 +1,214 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.export.task;
+
+import com.webank.blockchain.data.export.common.bo.data.BlockInfoBO;
+import com.webank.blockchain.data.export.common.entity.ExportConfig;
+import com.webank.blockchain.data.export.db.entity.BlockTaskPool;
+import com.webank.blockchain.data.export.service.BlockCommitWatermark;
+import com.webank.blockchain.data.export.service.BlockCrawlService;
+import com.webank.blockchain.data.export.service.BlockDepotService;
+import com.webank.blockchain.data.export.tools.ExecutorUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.Block;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BlockPipeline runs the fetch, parse and store stages of a batch of claimed tasks on separate thread pools,
+ * connected by bounded queues, so that node RPC, parsing and database writes overlap. A task is only marked DONE
+ * by the store stage, after all its data is stored, and in height order through a BlockCommitWatermark.
+ */
+@Slf4j
+public class BlockPipeline {
+
+    private static final Item END = new Item(0, null, null);
+
+    private final int fetchThreadCount;
+    private final int parseThreadCount;
+    private final int storeThreadCount;
+    private final int queueCapacity;
+
+    private final ExecutorService fetchPool;
+    private final ExecutorService parsePool;
+    private final ExecutorService storePool;
+
+    public static BlockPipeline create(ExportConfig config) {
+        return new BlockPipeline(config.getFetchThreadCount(), config.getParseThreadCount(),
+                config.getStoreThreadCount(), config.getPipelineQueueCapacity());
+    }
+
+    private BlockPipeline(int fetchThreadCount, int parseThreadCount, int storeThreadCount, int queueCapacity) {
+        this.fetchThreadCount = fetchThreadCount;
+        this.parseThreadCount = parseThreadCount;
+        this.storeThreadCount = storeThreadCount;
+        this.queueCapacity = queueCapacity;
+        this.fetchPool = ExecutorUtils.newFixedThreadPool("pipeline-fetch", fetchThreadCount);
+        this.parsePool = ExecutorUtils.newFixedThreadPool("pipeline-parse", parseThreadCount);
+        this.storePool = ExecutorUtils.newFixedThreadPool("pipeline-store", storeThreadCount);
+    }
+
+    /**
+     * Push the tasks through the three stages and wait until every one of them is either DONE or ERROR.
+     *
+     * @param tasks claimed tasks in DOING status
+     * @param total current chain height, for logging
+     */
+    public void process(List<BlockTaskPool> tasks, long total) throws InterruptedException {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        BlockCommitWatermark watermark = new BlockCommitWatermark(BlockDepotService::markDone);
+        tasks.forEach(task -> watermark.track(task.getBlockHeight()));
+        ConcurrentLinkedQueue<BlockTaskPool> taskQueue = new ConcurrentLinkedQueue<>(tasks);
+        BlockingQueue<Item> fetchedQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Item> parsedQueue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicInteger fetchers = new AtomicInteger(fetchThreadCount);
+        AtomicInteger parsers = new AtomicInteger(parseThreadCount);
+        CountDownLatch stored = new CountDownLatch(storeThreadCount);
+
+        for (int i = 0; i < fetchThreadCount; i++) {
+            fetchPool.execute(ExecutorUtils.wrap(() -> fetch(taskQueue, fetchedQueue, fetchers, watermark)));
+        }
+        for (int i = 0; i < parseThreadCount; i++) {
+            parsePool.execute(ExecutorUtils.wrap(() -> parse(fetchedQueue, parsedQueue, parsers, watermark)));
+        }
+        for (int i = 0; i < storeThreadCount; i++) {
+            storePool.execute(ExecutorUtils.wrap(() -> store(parsedQueue, stored, total, watermark)));
+        }
+        stored.await();
+        log.info("Pipeline finished {} tasks, committed up to height {}.", tasks.size(), watermark.getWatermark());
+    }
+
+    public void shutdown() {
+        fetchPool.shutdownNow();
+        parsePool.shutdownNow();
+        storePool.shutdownNow();
+    }
+
+    private void fetch(ConcurrentLinkedQueue<BlockTaskPool> taskQueue, BlockingQueue<Item> fetchedQueue,
+                       AtomicInteger fetchers, BlockCommitWatermark watermark) {
+        try {
+            BlockTaskPool task;
+            while ((task = taskQueue.poll()) != null) {
+                long blockHeight = task.getBlockHeight();
+                try {
+                    Block block = BlockCrawlService.getBlock(BigInteger.valueOf(blockHeight));
+                    if (block == null) {
+                        log.error("Block {}, fetch returns nothing", blockHeight);
+                        BlockDepotService.markError(blockHeight);
+                        watermark.settle(blockHeight, false);
+                        continue;
+                    }
+                    fetchedQueue.put(new Item(blockHeight, block, null));
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    log.error("Block {},  exception occur in fetch stage: {}", blockHeight, e.getMessage());
+                    BlockDepotService.markError(blockHeight);
+                    watermark.settle(blockHeight, false);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (fetchers.decrementAndGet() == 0) {
+                finish(fetchedQueue, parseThreadCount);
+            }
+        }
+    }
+
+    private void parse(BlockingQueue<Item> fetchedQueue, BlockingQueue<Item> parsedQueue, AtomicInteger parsers,
+                       BlockCommitWatermark watermark) {
+        try {
+            Item item;
+            while ((item = fetchedQueue.take()) != END) {
+                try {
+                    BlockInfoBO blockInfo = BlockCrawlService.parse(item.block);
+                    parsedQueue.put(new Item(item.blockHeight, null, blockInfo));
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    log.error("Block {},  exception occur in parse stage: {}", item.blockHeight, e.getMessage());
+                    BlockDepotService.markError(item.blockHeight);
+                    BlockDepotService.clearCache(item.blockHeight);
+                    watermark.settle(item.blockHeight, false);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (parsers.decrementAndGet() == 0) {
+                finish(parsedQueue, storeThreadCount);
+            }
+        }
+    }
+
+    private void store(BlockingQueue<Item> parsedQueue, CountDownLatch stored, long total,
+                       BlockCommitWatermark watermark) {
+        try {
+            Item item;
+            while ((item = parsedQueue.take()) != END) {
+                boolean done = false;
+                try {
+                    BlockDepotService.store(item.blockInfo);
+                    log.info("Block {} of {} sync block succeed.", item.blockHeight, total);
+                    done = true;
+                } catch (Exception e) {
+                    log.error("Block {},  exception occur in store stage: {}", item.blockHeight, e.getMessage());
+                    BlockDepotService.markError(item.blockHeight);
+                }
+                BlockDepotService.clearCache(item.blockHeight);
+                watermark.settle(item.blockHeight, done);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stored.countDown();
+        }
+    }
+
+    /**
+     * wake up every consumer of the next stage once the last producer is gone.
+     */
+    private static void finish(BlockingQueue<Item> queue, int consumers) {
+        for (int i = 0; i < consumers; i++) {
+            try {
+                queue.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static class Item {
+        private final long blockHeight;
+        private final Block block;
+        private final BlockInfoBO blockInfo;
+
+        private Item(long blockHeight, Block block, BlockInfoBO blockInfo) {
+            this.blockHeight = blockHeight;
+            this.block = block;
+            this.blockInfo = blockInfo;
+        }
+    }
+}
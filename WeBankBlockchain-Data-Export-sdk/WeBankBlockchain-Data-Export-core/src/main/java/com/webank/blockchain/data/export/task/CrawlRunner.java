@@ -14,9 +14,12 @@
 package com.webank.blockchain.data.export.task;
 
 import cn.hutool.core.collection.CollectionUtil;
+import com.google.common.base.Stopwatch;
 import com.webank.blockchain.data.export.common.bo.contract.ContractMapsInfo;
+import com.webank.blockchain.data.export.common.client.BlockNotifier;
 import com.webank.blockchain.data.export.common.client.ChainClient;
 import com.webank.blockchain.data.export.common.client.ChannelClient;
+import com.webank.blockchain.data.export.common.client.CodeCachingClient;
 import com.webank.blockchain.data.export.common.client.RpcHttpClient;
 import com.webank.blockchain.data.export.common.client.StashClient;
 import com.webank.blockchain.data.export.common.constants.BlockConstants;
@@ -27,22 +30,24 @@ import com.webank.blockchain.data.export.common.entity.DataExportContext;
 import com.webank.blockchain.data.export.common.entity.ExportConstant;
 import com.webank.blockchain.data.export.common.entity.StashInfo;
 import com.webank.blockchain.data.export.common.enums.DataType;
+import com.webank.blockchain.data.export.db.entity.BlockTaskPool;
 import com.webank.blockchain.data.export.parser.contract.ContractParser;
 import com.webank.blockchain.data.export.service.BlockAsyncService;
 import com.webank.blockchain.data.export.service.BlockCheckService;
 import com.webank.blockchain.data.export.service.BlockDepotService;
 import com.webank.blockchain.data.export.service.BlockIndexService;
+import com.webank.blockchain.data.export.service.BlockPrefetcher;
 import com.webank.blockchain.data.export.service.BlockPrepareService;
 import com.webank.blockchain.data.export.tools.DataSourceUtils;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
-import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.Block;
 import org.fisco.bcos.sdk.config.exceptions.ConfigException;
 import org.fisco.bcos.sdk.transaction.codec.decode.TransactionDecoderService;
 
 import javax.sql.DataSource;
 import java.net.MalformedURLException;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 
@@ -64,6 +69,20 @@ public class CrawlRunner {
 
     private AtomicBoolean runSwitch = new AtomicBoolean(false);
 
+    private BlockPipeline pipeline;
+
+    private BlockAsyncService asyncService;
+
+    private AdaptiveBatchController batchController;
+
+    private BlockNotifyWaiter blockNotifyWaiter;
+
+    private BackfillLane backfillLane;
+
+    private FinalityAuditor finalityAuditor;
+
+    private long lastCheckpointTime = System.currentTimeMillis();
+
     public static CrawlRunner create(DataExportContext context){
         return new CrawlRunner(context);
     }
@@ -80,7 +99,8 @@ public class CrawlRunner {
         }
         buildClient();
         //abi、bin parse
-        ContractMapsInfo mapsInfo = ContractParser.initContractMaps(ExportConstant.getCurrentContext().getConfig().getContractInfoList());
+        ContractMapsInfo mapsInfo = ContractParser.initContractMaps(context.getConfig().getContractInfoList(),
+                context.getClient().getCryptoSuite());
         ContractConstants.setCurrentContractMaps(mapsInfo);
         DataPersistenceManager.getCurrentManager().buildDataStore();
         handle();
@@ -97,7 +117,7 @@ public class CrawlRunner {
                     stashInfo.getPass());
             context.setStashDataSource(dataSource);
             chainClient = new StashClient();
-            context.setClient(chainClient);
+            context.setClient(CodeCachingClient.wrap(chainClient, context.getConfig().getCodeCacheMaxBytes()));
             return;
         }
         if (chainInfo.getRpcUrl() != null) {
@@ -105,7 +125,7 @@ public class CrawlRunner {
         } else {
             chainClient = new ChannelClient();
         }
-        context.setClient(chainClient);
+        context.setClient(CodeCachingClient.wrap(chainClient, context.getConfig().getCodeCacheMaxBytes()));
     }
 
     private void checkConfig() {
@@ -151,6 +171,42 @@ public class CrawlRunner {
             log.error("The batch unit threshold can't be less than 1!!");
             return;
         }
+        if (context.getConfig().getDepotThreadCount() < 1) {
+            log.error("The depot thread count can't be less than 1!!");
+            return;
+        }
+        if (context.getConfig().getPrefetchWindow() < 1 || context.getConfig().getPrefetchThreadCount() < 1) {
+            log.error("The prefetch window and thread count can't be less than 1!!");
+            return;
+        }
+        if (context.getConfig().isAdaptiveBatchEnabled()) {
+            if (context.getConfig().getMinCrawlBatchUnit() < 1
+                    || context.getConfig().getMaxCrawlBatchUnit() < context.getConfig().getMinCrawlBatchUnit()) {
+                log.error("The adaptive batch unit bounds are invalid!!");
+                return;
+            }
+            if (context.getConfig().getMaxDepotThreadCount() < 1 || context.getConfig().getTargetBatchMillis() < 1) {
+                log.error("The adaptive max depot thread count and target batch millis can't be less than 1!!");
+                return;
+            }
+        }
+        if (context.getConfig().isDualLaneEnabled()) {
+            if (context.getConfig().getBackfillThreadCount() < 1 || context.getConfig().getBackfillChunkSize() < 1) {
+                log.error("The backfill thread count and chunk size can't be less than 1!!");
+                return;
+            }
+        }
+        if (context.getConfig().isPipelineEnabled()) {
+            if (context.getConfig().getFetchThreadCount() < 1 || context.getConfig().getParseThreadCount() < 1
+                    || context.getConfig().getStoreThreadCount() < 1) {
+                log.error("The pipeline thread count of each stage can't be less than 1!!");
+                return;
+            }
+            if (context.getConfig().getPipelineQueueCapacity() < 1) {
+                log.error("The pipeline queue capacity can't be less than 1!!");
+                return;
+            }
+        }
         if (CollectionUtil.isNotEmpty(context.getConfig().getContractInfoList())) {
             for(ContractInfo contractInfo : context.getConfig().getContractInfoList()){
                 if (contractInfo.getAbi() == null || contractInfo.getBinary() == null || contractInfo.getContractName() == null) {
@@ -162,6 +218,64 @@ public class CrawlRunner {
         runSwitch.getAndSet(true);
     }
 
+    /**
+     * hand the history up to the chain head minus the fork certainty blocks over to a BackfillLane, if it is at least
+     * a chunk, and let this loop follow the tip above it.
+     */
+    private void startBackfillLane() {
+        try {
+            long historicalEnd = BlockPrepareService.getCurrentBlockHeight()
+                    - BlockConstants.MAX_FORK_CERTAINTY_BLOCK_NUMBER;
+            if (historicalEnd - startBlockNumber + 1 < context.getConfig().getBackfillChunkSize()) {
+                log.info("History to {} is less than a backfill chunk, no backfill lane is needed", historicalEnd);
+                return;
+            }
+            backfillLane = BackfillLane.create(context.getConfig(), startBlockNumber, historicalEnd, runSwitch);
+            backfillLane.start();
+        } catch (Exception e) {
+            log.error("start backfill lane failed, the crawl loop handles the history itself ", e);
+            backfillLane = null;
+        }
+    }
+
+    /**
+     * @return the lowest height handled by this loop, which is above the backfill lane until it is finished
+     */
+    public long getTailHeight() {
+        if (backfillLane != null && !backfillLane.isFinished()) {
+            return backfillLane.getToHeight() + 1;
+        }
+        return startBlockNumber;
+    }
+
+    private void checkpointTaskPool() {
+        long now = System.currentTimeMillis();
+        if (now - lastCheckpointTime >= context.getConfig().getTaskTrackerCheckpointSeconds() * 1000) {
+            DataPersistenceManager.getCurrentManager().checkpointTaskPool();
+            lastCheckpointTime = now;
+        }
+    }
+
+    private BlockNotifyWaiter createBlockNotifyWaiter() {
+        BlockNotifier notifier = null;
+        if (context.getConfig().isBlockNotifyEnabled()) {
+            notifier = context.getClient().getBlockNotifier();
+        }
+        try {
+            return BlockNotifyWaiter.create(notifier);
+        } catch (Exception e) {
+            log.error("subscribe block notify failed, fall back to polling ", e);
+            return BlockNotifyWaiter.create(null);
+        }
+    }
+
+    /**
+     * @return the batch unit of the next batch, adjusted at runtime when adaptive batch is enabled
+     */
+    public int getBatchUnit() {
+        return batchController != null ? batchController.getBatchUnit() : context.getConfig().getCrawlBatchUnit();
+    }
+
     public long getHeight(long height) {
         return Math.max(height, startBlockNumber);
     }
@@ -186,40 +300,76 @@ public class CrawlRunner {
         } catch (Exception e) {
             log.error("depot Error, {}", e.getMessage());
         }
+        if (context.getConfig().isPipelineEnabled()) {
+            pipeline = BlockPipeline.create(context.getConfig());
+        } else {
+            asyncService = BlockAsyncService.create(context.getConfig().getDepotThreadCount());
+        }
+        if (context.getConfig().isAdaptiveBatchEnabled()) {
+            batchController = AdaptiveBatchController.create(context.getConfig(), context.getStageMetrics());
+        }
+        blockNotifyWaiter = createBlockNotifyWaiter();
+        if (context.getConfig().isDualLaneEnabled()) {
+            startBackfillLane();
+        }
+        if (context.getConfig().isInstantFinality() && context.getConfig().getFinalityAuditSeconds() > 0) {
+            finalityAuditor = FinalityAuditor.create(context.getConfig());
+            finalityAuditor.start();
+        }
         while (!Thread.currentThread().isInterrupted() && runSwitch.get()) {
             try {
                 long currentChainHeight = BlockPrepareService.getCurrentBlockHeight();
-                long fromHeight = getHeight(BlockPrepareService.getTaskPoolHeight());
+                long fromHeight = Math.max(getHeight(BlockPrepareService.getTaskPoolHeight()), getTailHeight());
                 // control the batch unit number
-                long end = fromHeight + context.getConfig().getCrawlBatchUnit() - 1;
+                int batchUnit = getBatchUnit();
+                long end = fromHeight + batchUnit - 1;
                 long toHeight = Math.min(currentChainHeight, end);
                 log.info("Current depot status: {} of {}, and try to process block from {} to {}", fromHeight - 1,
                         currentChainHeight, fromHeight, toHeight);
                 boolean certainty = toHeight + 1 < currentChainHeight - BlockConstants.MAX_FORK_CERTAINTY_BLOCK_NUMBER;
                 if (fromHeight <= toHeight) {
                     log.info("Try to sync block number {} to {} of {}", fromHeight, toHeight, currentChainHeight);
-                    BlockPrepareService.prepareTask(fromHeight, toHeight, certainty);
+                    BlockPrepareService.prepareTask(fromHeight, toHeight,
+                            certainty || context.getConfig().isInstantFinality());
                 } else {
-                    // single circle sleep time is read from the application.properties
-                    log.info("No sync block tasks to prepare, begin to sleep {} s",
+                    // single circle wait time is read from the application.properties
+                    log.info("No sync block tasks to prepare, begin to wait for a new block at most {} s",
                             context.getConfig().getFrequency());
                     try {
-                        Thread.sleep(context.getConfig().getFrequency() * 1000);
+                        blockNotifyWaiter.await(currentChainHeight, context.getConfig().getFrequency(),
+                                TimeUnit.SECONDS);
                     }catch (InterruptedException e){
                         Thread.currentThread().interrupt();
                     }
                 }
-                log.info("Begin to fetch at most {} tasks", context.getConfig().getCrawlBatchUnit());
-                List<Block> taskList = BlockDepotService.fetchData(context.getConfig().getCrawlBatchUnit());
-                for (Block b : taskList) {
-                    BlockAsyncService.handleSingleBlock(b, currentChainHeight);
+                log.info("Begin to fetch at most {} tasks", batchUnit);
+                List<BlockTaskPool> tasks = BlockDepotService.claimTasks(getTailHeight(), Long.MAX_VALUE, batchUnit);
+                Stopwatch stopwatch = Stopwatch.createStarted();
+                if (pipeline != null) {
+                    pipeline.process(tasks, currentChainHeight);
+                } else {
+                    try (BlockPrefetcher prefetcher = BlockDepotService.prefetch(tasks)) {
+                        asyncService.handleBlocks(prefetcher, currentChainHeight);
+                    }
+                }
+                if (batchController != null) {
+                    batchController.update(currentChainHeight - fromHeight + 1, tasks.size(),
+                            stopwatch.elapsed(TimeUnit.MILLISECONDS));
+                    if (asyncService != null) {
+                        asyncService.resize(batchController.getThreadCount());
+                    }
                 }
                 if (!certainty) {
-                    BlockCheckService.checkForks(currentChainHeight);
-                    BlockCheckService.checkTaskCount(startBlockNumber, currentChainHeight);
+                    if (!context.getConfig().isInstantFinality()) {
+                        BlockCheckService.checkForks(currentChainHeight);
+                    }
+                    BlockCheckService.checkTaskCount(getTailHeight(), currentChainHeight);
                 }
                 BlockCheckService.checkTimeOut();
                 BlockCheckService.processErrors();
+                checkpointTaskPool();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             } catch (Exception e) {
                 log.error("CrawlRunner run failed ", e);
                 try {
@@ -229,6 +379,21 @@ public class CrawlRunner {
                 }
             }
         }
+        blockNotifyWaiter.close();
+        if (backfillLane != null) {
+            backfillLane.shutdown();
+        }
+        DataPersistenceManager.getCurrentManager().checkpointTaskPool();
+        if (finalityAuditor != null) {
+            finalityAuditor.shutdown();
+        }
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+        if (asyncService != null) {
+            asyncService.shutdown();
+        }
+        context.shutdownSharedPools();
         log.info("DataExportExecutor already ended ！！！");
     }
 
@@ -7,6 +7,7 @@ import com.webank.blockchain.data.export.tools.ElasticJobUtil;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.shardingsphere.elasticjob.api.JobConfiguration;
+import org.apache.shardingsphere.elasticjob.dataflow.props.DataflowJobProperties;
 import org.apache.shardingsphere.elasticjob.lite.api.bootstrap.impl.ScheduleJobBootstrap;
 import org.apache.shardingsphere.elasticjob.reg.base.CoordinatorRegistryCenter;
 
@@ -33,6 +34,8 @@ public class DataExportExecutor {
 
     private CrawlRunner crawlRunner;
 
+    private LeaseCoordinator leaseCoordinator;
+
     public DataExportExecutor(DataExportContext context) {
         this.context = context;
     }
@@ -41,6 +44,11 @@ public class DataExportExecutor {
 
     public void start() {
         log.info("DataExportExecutor is starting ！！！");
+        if (context.getConfig().isMultiLiving() && context.getConfig().isLeaseCoordinatorEnabled()) {
+            leaseCoordinator = LeaseCoordinator.create(context, new PrepareTaskJob(context));
+            leaseCoordinator.start();
+            return;
+        }
         if (context.getConfig().isMultiLiving()){
             ExportConfig config = context.getConfig();
             CoordinatorRegistryCenter registryCenter = ElasticJobUtil.createRegistryCenter(
@@ -50,11 +58,15 @@ public class DataExportExecutor {
                     JobConfiguration.newBuilder("PrepareTaskJob", 1)
                             .cron(config.getPrepareTaskJobCron()).shardingItemParameters("0=A").overwrite(true).build()
                    ).schedule();
+            DepotLoadRegistry loadRegistry =
+                    config.isDataFlowJobWorkStealing() ? new DepotLoadRegistry(registryCenter) : null;
             new ScheduleJobBootstrap(registryCenter, new DepotJob(context,
-                    prepareTaskJob.getMapsInfo(),prepareTaskJob.getDataPersistenceManager()),
+                    prepareTaskJob.getMapsInfo(),prepareTaskJob.getDataPersistenceManager(), loadRegistry),
                     JobConfiguration.newBuilder("DataFlowJob", config.getDataFlowJobShardingTotalCount())
                             .cron(config.getDataFlowJobCron())
-                            .shardingItemParameters(config.getDataFlowJobItemParameters()).overwrite(true).build()
+                            .shardingItemParameters(config.getDataFlowJobItemParameters())
+                            .setProperty(DataflowJobProperties.STREAM_PROCESS_KEY, Boolean.TRUE.toString())
+                            .overwrite(true).build()
                     ).schedule();
             return;
         }
@@ -67,6 +79,11 @@ public class DataExportExecutor {
     }
 
     public void stop() {
+        if (leaseCoordinator != null) {
+            leaseCoordinator.stop();
+            log.info("DataExportExecutor stop success ！！！");
+            return;
+        }
         future.cancel(true);
         crawlRunner.getRunSwitch().compareAndSet(true,false);
         log.info("DataExportExecutor stop success ！！！");
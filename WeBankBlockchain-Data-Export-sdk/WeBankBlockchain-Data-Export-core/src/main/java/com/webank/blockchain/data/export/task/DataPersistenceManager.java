@@ -10,6 +10,7 @@ import com.webank.blockchain.data.export.common.bo.data.ContractInfoBO;
 import com.webank.blockchain.data.export.common.constants.ContractConstants;
 import com.webank.blockchain.data.export.common.entity.DataExportContext;
 import com.webank.blockchain.data.export.common.entity.ExportConstant;
+import com.webank.blockchain.data.export.common.entity.TableSQL;
 import com.webank.blockchain.data.export.common.enums.DataType;
 import com.webank.blockchain.data.export.db.dao.BlockDetailInfoDAO;
 import com.webank.blockchain.data.export.db.dao.BlockRawDataDAO;
@@ -23,10 +24,14 @@ import com.webank.blockchain.data.export.db.dao.TxRawDataDAO;
 import com.webank.blockchain.data.export.db.dao.TxReceiptRawDataDAO;
 import com.webank.blockchain.data.export.db.repository.BlockDetailInfoRepository;
 import com.webank.blockchain.data.export.db.repository.BlockRawDataRepository;
+import com.webank.blockchain.data.export.db.repository.BlockTaskPoolMemoryRepository;
 import com.webank.blockchain.data.export.db.repository.BlockTaskPoolRepository;
 import com.webank.blockchain.data.export.db.repository.BlockTxDetailInfoRepository;
 import com.webank.blockchain.data.export.db.repository.ContractInfoRepository;
 import com.webank.blockchain.data.export.db.repository.DeployedAccountInfoRepository;
+import com.webank.blockchain.data.export.db.repository.ExportCursorRepository;
+import com.webank.blockchain.data.export.db.repository.ExportLeaseRepository;
+import com.webank.blockchain.data.export.db.repository.MethodAndEventRepository;
 import com.webank.blockchain.data.export.db.repository.RollbackInterface;
 import com.webank.blockchain.data.export.db.repository.TxRawDataRepository;
 import com.webank.blockchain.data.export.db.repository.TxReceiptRawDataRepository;
@@ -37,6 +42,7 @@ import com.webank.blockchain.data.export.tools.DataSourceUtils;
 import lombok.Data;
 import org.elasticsearch.client.transport.TransportClient;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -63,6 +69,8 @@ public class DataPersistenceManager {
     private TxReceiptRawDataRepository txReceiptRawDataRepository;
     private DeployedAccountInfoRepository deployedAccountInfoRepository;
     private ContractInfoRepository contractInfoRepository;
+    private ExportLeaseRepository exportLeaseRepository;
+    private ExportCursorRepository exportCursorRepository;
 
     private List<DataStoreService> dataStoreServiceList = new ArrayList<>();
     private List<RollbackInterface> rollbackOneInterfaceList = new ArrayList<>();
@@ -199,7 +207,62 @@ public class DataPersistenceManager {
                     daoTemplateMap.get(CONTRACT_INFO_DAO), tablePrefix + CONTRACT_INFO_TABLE + tablePostfix);
         }
         if (!blackTables.contains(DataType.BLOCK_TASK_POOL_TABLE)) {
-            blockTaskPoolRepository = new BlockTaskPoolRepository(daoTemplateMap.get(BLOCK_TASK_POOL_DAO), tablePrefix + BLOCK_TASK_POOL_TABLE + tablePostfix);
+            if (context.getConfig().isTaskTrackerEnabled() && !context.getConfig().isMultiLiving()) {
+                blockTaskPoolRepository = buildMemoryRepository(daoTemplateMap.get(BLOCK_TASK_POOL_DAO),
+                        tablePrefix + BLOCK_TASK_POOL_TABLE + tablePostfix,
+                        tablePrefix + BLOCK_TASK_RANGE_TABLE + tablePostfix);
+            } else {
+                blockTaskPoolRepository = new BlockTaskPoolRepository(daoTemplateMap.get(BLOCK_TASK_POOL_DAO), tablePrefix + BLOCK_TASK_POOL_TABLE + tablePostfix);
+            }
+        }
+        buildMethodAndEventRepository(blackTables);
+        if (context.getConfig().isMultiLiving() && context.getConfig().isLeaseCoordinatorEnabled()) {
+            exportLeaseRepository = new ExportLeaseRepository(tablePrefix + EXPORT_LEASE_TABLE + tablePostfix);
+        }
+        if (context.getConfig().isInstantFinality() && context.getConfig().getFinalityAuditSeconds() > 0) {
+            exportCursorRepository = new ExportCursorRepository(tablePrefix + EXPORT_CURSOR_TABLE + tablePostfix);
+        }
+    }
+
+    private void buildMethodAndEventRepository(List<DataType> blackTables) {
+        ContractMapsInfo mapsInfo = ContractConstants.getCurrentContractMaps();
+        if (mapsInfo == null) {
+            return;
+        }
+        for (ContractDetail contractDetail : mapsInfo.getContractBinaryMap().values()) {
+            if (!blackTables.contains(DataType.METHOD_TABLE)
+                    && CollectionUtil.isNotEmpty(contractDetail.getMethodMetaInfos())) {
+                contractDetail.getMethodMetaInfos().forEach(info -> rollbackOneInterfaceList.add(
+                        new MethodAndEventRepository(TableSQL.getTableName(info.getContractName(),
+                                info.getMethodName() + "_method"))));
+            }
+            if (!blackTables.contains(DataType.EVENT_TABLE)
+                    && CollectionUtil.isNotEmpty(contractDetail.getEventMetaInfos())) {
+                contractDetail.getEventMetaInfos().forEach(info -> rollbackOneInterfaceList.add(
+                        new MethodAndEventRepository(TableSQL.getTableName(info.getContractName(),
+                                info.getEventName() + "_event"))));
+            }
+        }
+    }
+
+    private BlockTaskPoolMemoryRepository buildMemoryRepository(DaoTemplate blockTaskPoolDao, String tableName,
+                                                                String rangeTableName) {
+        BlockTaskPoolMemoryRepository repository = new BlockTaskPoolMemoryRepository(blockTaskPoolDao, tableName,
+                rangeTableName, context.getDataSource());
+        try {
+            repository.load();
+        } catch (SQLException e) {
+            throw new IllegalStateException("task tracker rebuild failed", e);
+        }
+        return repository;
+    }
+
+    /**
+     * checkpoint the in memory task pool, if the task tracker is used.
+     */
+    public void checkpointTaskPool() {
+        if (blockTaskPoolRepository instanceof BlockTaskPoolMemoryRepository) {
+            ((BlockTaskPoolMemoryRepository) blockTaskPoolRepository).checkpoint();
         }
     }
 
@@ -17,21 +17,27 @@ package com.webank.blockchain.data.export.task;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.shardingsphere.elasticjob.api.ShardingContext;
 import org.apache.shardingsphere.elasticjob.dataflow.job.DataflowJob;
 import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.Block;
 
 import com.webank.blockchain.data.export.common.bo.contract.ContractMapsInfo;
+import com.webank.blockchain.data.export.common.constants.BlockConstants;
 import com.webank.blockchain.data.export.common.constants.ContractConstants;
 import com.webank.blockchain.data.export.common.entity.DataExportContext;
 import com.webank.blockchain.data.export.common.entity.ExportConstant;
-import com.webank.blockchain.data.export.common.enums.TxInfoStatusEnum;
 import com.webank.blockchain.data.export.db.entity.BlockTaskPool;
 import com.webank.blockchain.data.export.service.BlockDepotService;
+import com.webank.blockchain.data.export.task.DepotLoadRegistry.DepotLoad;
 
 import cn.hutool.core.collection.CollectionUtil;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * MyDataflowJob
@@ -41,18 +47,44 @@ import cn.hutool.core.collection.CollectionUtil;
  * @data Jan 10, 2019 12:03:37 PM
  *
  */
+@Slf4j
 public class DepotJob implements DataflowJob<Block> {
 
+    private static final double THROUGHPUT_WEIGHT = 0.3;
+
+    private static final long BACKLOG_SAMPLE_MILLIS = 10_000;
+
     private final DataExportContext context;
 
     private final DataPersistenceManager dataPersistenceManager;
 
     private final ContractMapsInfo mapsInfo;
 
+    private final Map<Integer, Date> leaseTimes = new ConcurrentHashMap<>();
+
+    private final Map<Integer, Double> throughputs = new ConcurrentHashMap<>();
+
+    private final Map<Integer, Long> backlogs = new ConcurrentHashMap<>();
+
+    private final Map<Integer, Long> backlogSampleTimes = new ConcurrentHashMap<>();
+
+    private final DepotLoadRegistry loadRegistry;
+
+    private volatile int shardingTotalCount;
+
     public DepotJob(DataExportContext context, ContractMapsInfo mapsInfo, DataPersistenceManager dataPersistenceManager) {
+        this(context, mapsInfo, dataPersistenceManager, null);
+    }
+
+    /**
+     * @param loadRegistry the registry to publish the load to and steal tasks by, or null to keep to own segments
+     */
+    public DepotJob(DataExportContext context, ContractMapsInfo mapsInfo, DataPersistenceManager dataPersistenceManager,
+                    DepotLoadRegistry loadRegistry) {
         this.context = context;
         this.mapsInfo = mapsInfo;
         this.dataPersistenceManager = dataPersistenceManager;
+        this.loadRegistry = loadRegistry;
     }
 
     @Override
@@ -61,14 +93,36 @@ public class DepotJob implements DataflowJob<Block> {
         DataPersistenceManager.setCurrentManager(dataPersistenceManager);
         ContractConstants.setCurrentContractMaps(mapsInfo);
 
-        List<BlockTaskPool> tasks =
-                DataPersistenceManager.getCurrentManager().getBlockTaskPoolRepository()
-                        .findBySyncStatusModByBlockHeightLimit(shardingContext.getShardingTotalCount(),
-                        shardingContext.getShardingItem(), (short) TxInfoStatusEnum.INIT.getStatus(), 1);
+        int shardingTotalCount = shardingContext.getShardingTotalCount();
+        if (this.shardingTotalCount != shardingTotalCount) {
+            log.info("Sharding total count changes from {} to {}, height segments of {} are reassigned",
+                    this.shardingTotalCount, shardingTotalCount, context.getConfig().getDataFlowJobSegmentSize());
+            this.shardingTotalCount = shardingTotalCount;
+            backlogSampleTimes.clear();
+        }
+        int shardingItem = shardingContext.getShardingItem();
+        int leaseSize = context.getConfig().getDataFlowJobLeaseSize();
+        Date leaseTime = new Date();
+        List<BlockTaskPool> tasks = BlockDepotService.leaseTasks(shardingItem, shardingItem, shardingTotalCount,
+                leaseTime, leaseSize);
+        if (CollectionUtil.isEmpty(tasks) && loadRegistry != null) {
+            backlogs.put(shardingItem, 0L);
+            loadRegistry.publish(new DepotLoad(shardingItem, throughputs.getOrDefault(shardingItem, 0.0), 0,
+                    shardingTotalCount, System.currentTimeMillis()));
+            Optional<DepotLoad> slowest = loadRegistry.findSlowestPeer(shardingItem, shardingTotalCount);
+            if (slowest.isPresent()) {
+                tasks = BlockDepotService.leaseTasks(shardingItem, slowest.get().getShardingItem(),
+                        shardingTotalCount, leaseTime, leaseSize);
+                log.info("Sharding item {} steals {} tasks from item {}, whose backlog is {} at {} blocks/s",
+                        shardingItem, tasks.size(), slowest.get().getShardingItem(), slowest.get().getBacklog(),
+                        String.format("%.2f", slowest.get().getBlocksPerSecond()));
+            }
+        }
         if (CollectionUtil.isEmpty(tasks)) {
             return new ArrayList<>();
         }
-        return BlockDepotService.getTasks(tasks);
+        leaseTimes.put(shardingItem, leaseTime);
+        return BlockDepotService.fetchBlocks(tasks);
     }
 
     @Override
@@ -78,7 +132,50 @@ public class DepotJob implements DataflowJob<Block> {
         ContractConstants.setCurrentContractMaps(mapsInfo);
 
         BigInteger blockNumber = ExportConstant.getCurrentContext().getClient().getBlockNumber();
-        BlockDepotService.processDataSequence(data, blockNumber.longValue());
+        Date leaseTime = leaseTimes.get(shardingContext.getShardingItem());
+        long leaseExpire = leaseTime == null ? Long.MAX_VALUE
+                : leaseTime.getTime() + BlockConstants.DEPOT_TIME_OUT * 1000L;
+        long begin = System.currentTimeMillis();
+        int processed = 0;
+        for (Block b : data) {
+            if (System.currentTimeMillis() >= leaseExpire) {
+                log.warn("Lease of sharding item {} expired, block {} and above are left to the timeout check",
+                        shardingContext.getShardingItem(), b.getNumber());
+                break;
+            }
+            if (leaseTime == null) {
+                BlockDepotService.process(b, blockNumber.longValue());
+            } else if (!BlockDepotService.process(b, blockNumber.longValue(), shardingContext.getShardingItem(),
+                    leaseTime)) {
+                break;
+            }
+            processed++;
+        }
+        if (loadRegistry != null) {
+            publishLoad(shardingContext, processed, System.currentTimeMillis() - begin);
+        }
+    }
+
+    /**
+     * publish the load of a sharding item, the backlog is counted at most every BACKLOG_SAMPLE_MILLIS, and estimated
+     * from the last count and the blocks processed since in between.
+     */
+    private void publishLoad(ShardingContext shardingContext, int processed, long elapsedMillis) {
+        int shardingItem = shardingContext.getShardingItem();
+        int shardingTotalCount = shardingContext.getShardingTotalCount();
+        double current = processed * 1000.0 / Math.max(elapsedMillis, 1);
+        double throughput = throughputs.merge(shardingItem, current,
+                (last, now) -> THROUGHPUT_WEIGHT * now + (1 - THROUGHPUT_WEIGHT) * last);
+        long now = System.currentTimeMillis();
+        long backlog;
+        if (now - backlogSampleTimes.getOrDefault(shardingItem, 0L) >= BACKLOG_SAMPLE_MILLIS) {
+            backlog = BlockDepotService.countBacklog(shardingItem, shardingTotalCount);
+            backlogSampleTimes.put(shardingItem, now);
+        } else {
+            backlog = Math.max(backlogs.getOrDefault(shardingItem, 0L) - processed, 0);
+        }
+        backlogs.put(shardingItem, backlog);
+        loadRegistry.publish(new DepotLoad(shardingItem, throughput, backlog, shardingTotalCount, now));
     }
 
 }
\ No newline at end of file
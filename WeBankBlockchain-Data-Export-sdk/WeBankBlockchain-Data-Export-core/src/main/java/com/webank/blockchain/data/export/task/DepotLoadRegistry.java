@@ -0,0 +1,97 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.export.task;
+
+import com.webank.blockchain.data.export.common.constants.BlockConstants;
+import com.webank.blockchain.data.export.common.tools.JacksonUtils;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.shardingsphere.elasticjob.reg.base.CoordinatorRegistryCenter;
+
+import java.util.Optional;
+
+/**
+ * DepotLoadRegistry publishes the load of each sharding item of the depot job as an ephemeral node of the ZooKeeper
+ * registry, so that an idle item can find the peer which needs the longest time to finish its backlog, and lease
+ * the tasks of that peer's segments. The node of an instance disappears with its session, a load published under
+ * another sharding total count or not renewed within STALE_MILLIS is ignored.
+ */
+@Slf4j
+public class DepotLoadRegistry {
+
+    private static final String LOAD_PATH = "/depot-load";
+
+    private static final long STALE_MILLIS = 2 * BlockConstants.DEPOT_TIME_OUT * 1000L;
+
+    private final CoordinatorRegistryCenter registryCenter;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class DepotLoad {
+        private int shardingItem;
+        private double blocksPerSecond;
+        private long backlog;
+        /** @Fields shardingTotalCount : the sharding total count the segments of the backlog are assigned by */
+        private int shardingTotalCount;
+        /** @Fields timestamp : publish time in milliseconds */
+        private long timestamp;
+
+        /**
+         * @return seconds to finish the backlog at the measured speed, the backlog of an item without a measured
+         * speed yet is counted as one block per second
+         */
+        public double getRemainingSeconds() {
+            return backlog / Math.max(blocksPerSecond, 1);
+        }
+    }
+
+    public DepotLoadRegistry(CoordinatorRegistryCenter registryCenter) {
+        this.registryCenter = registryCenter;
+    }
+
+    public void publish(DepotLoad load) {
+        try {
+            registryCenter.persistEphemeral(LOAD_PATH + "/" + load.getShardingItem(), JacksonUtils.toJson(load));
+        } catch (Exception e) {
+            log.error("publish depot load of sharding item {} failed ", load.getShardingItem(), e);
+        }
+    }
+
+    /**
+     * @return the load of the peer of shardingItem with the longest remaining time, if any peer has a backlog
+     */
+    public Optional<DepotLoad> findSlowestPeer(int shardingItem, int shardingTotalCount) {
+        DepotLoad slowest = null;
+        try {
+            for (String key : registryCenter.getChildrenKeys(LOAD_PATH)) {
+                DepotLoad load = JacksonUtils.fromJson(registryCenter.getDirectly(LOAD_PATH + "/" + key),
+                        DepotLoad.class);
+                if (load == null || load.getShardingItem() == shardingItem
+                        || load.getShardingTotalCount() != shardingTotalCount || load.getBacklog() <= 0
+                        || System.currentTimeMillis() - load.getTimestamp() > STALE_MILLIS) {
+                    continue;
+                }
+                if (slowest == null || load.getRemainingSeconds() > slowest.getRemainingSeconds()) {
+                    slowest = load;
+                }
+            }
+        } catch (Exception e) {
+            log.error("read depot loads failed ", e);
+        }
+        return Optional.ofNullable(slowest);
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.export.task;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+
+/**
+ * DepotSlots hands the depot slots out to the workers of an instance. The workers share the owner of their instance
+ * in the lease table, so a slot is claimed locally first, and only the worker holding the claim acquires or releases
+ * the lease of the slot.
+ */
+public class DepotSlots {
+
+    private final int slotCount;
+    private final Set<Integer> claimed = ConcurrentHashMap.newKeySet();
+
+    public static DepotSlots create(int slotCount) {
+        return new DepotSlots(slotCount);
+    }
+
+    private DepotSlots(int slotCount) {
+        this.slotCount = slotCount;
+    }
+
+    /**
+     * claim the first slot which no other worker of the instance holds and whose lease is acquired.
+     *
+     * @param acquire acquires the lease of a slot
+     * @return the slot, or -1 if none is free
+     */
+    public int claim(IntPredicate acquire) {
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (!claimed.add(slot)) {
+                continue;
+            }
+            if (acquire.test(slot)) {
+                return slot;
+            }
+            claimed.remove(slot);
+        }
+        return -1;
+    }
+
+    /**
+     * give the slot back once its lease is released or lost.
+     */
+    public void unclaim(int slot) {
+        claimed.remove(slot);
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.export.task;
+
+import com.webank.blockchain.data.export.common.entity.ExportConfig;
+import com.webank.blockchain.data.export.common.enums.BlockCertaintyEnum;
+import com.webank.blockchain.data.export.common.enums.TxInfoStatusEnum;
+import com.webank.blockchain.data.export.db.entity.BlockTaskPool;
+import com.webank.blockchain.data.export.db.repository.BlockTaskPoolRepository;
+import com.webank.blockchain.data.export.db.repository.ExportCursorRepository;
+import com.webank.blockchain.data.export.service.BlockForkVerifier;
+import com.webank.blockchain.data.export.service.RollBackService;
+import com.webank.blockchain.data.export.tools.ExecutorUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FinalityAuditor is the safety net of the instant finality mode, in which the tasks are prepared FIXED and no fork
+ * is checked. Every finalityAuditSeconds it compares the hashes of the blocks done with the chain in background, and
+ * resyncs the blocks from the first diverging one.
+ *
+ * <p>The audit walks the task pool from startBlockHeight on. Its cursor, the lowest height not audited yet, only
+ * moves over a contiguous run of DONE and verified tasks, so a height still in DOING or ERROR holds it until the
+ * block is done. The cursor is saved in export_cursor, so the audit goes on from there after a restart.
+ */
+@Slf4j
+public class FinalityAuditor {
+
+    private static final String CURSOR_NAME = "finality-audit";
+
+    private final long auditSeconds;
+    private final int batchSize;
+    private final long startBlockHeight;
+    private final ScheduledExecutorService pool;
+
+    private long cursor = -1;
+
+    public static FinalityAuditor create(ExportConfig config) {
+        return new FinalityAuditor(config);
+    }
+
+    private FinalityAuditor(ExportConfig config) {
+        this.auditSeconds = config.getFinalityAuditSeconds();
+        this.batchSize = config.getCrawlBatchUnit();
+        this.startBlockHeight = config.getStartBlockHeight();
+        this.pool = ExecutorUtils.newScheduledThreadPool("finality-audit", 1);
+    }
+
+    public void start() {
+        log.info("Finality audit starts every {} s", auditSeconds);
+        pool.scheduleWithFixedDelay(ExecutorUtils.wrap(this::audit), auditSeconds, auditSeconds, TimeUnit.SECONDS);
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    public void audit() {
+        try {
+            DataPersistenceManager manager = DataPersistenceManager.getCurrentManager();
+            BlockTaskPoolRepository repository = manager.getBlockTaskPoolRepository();
+            ExportCursorRepository cursorRepository = manager.getExportCursorRepository();
+            if (cursor < 0) {
+                cursor = cursorRepository.find(CURSOR_NAME).orElse(startBlockHeight);
+                log.info("Finality audit goes on from block {}", cursor);
+            }
+            while (!Thread.currentThread().isInterrupted()) {
+                List<Long> doneBlocks = findDoneRun(repository);
+                if (doneBlocks.isEmpty()) {
+                    return;
+                }
+                BlockForkVerifier.VerifyResult result = BlockForkVerifier.verify(doneBlocks);
+                List<Long> forkedBlocks = result.getForkedBlocks();
+                if (!forkedBlocks.isEmpty()) {
+                    log.error("Finality audit finds block {} differs from the chain, resync from it",
+                            forkedBlocks.get(0));
+                    RollBackService.rollbackBlocks(forkedBlocks);
+                    repository.setSyncStatusAndCertaintyByBlockHeights((short) TxInfoStatusEnum.INIT.getStatus(),
+                            (short) BlockCertaintyEnum.FIXED.getCertainty(), forkedBlocks);
+                    cursor = forkedBlocks.get(0);
+                    cursorRepository.save(CURSOR_NAME, cursor);
+                    return;
+                }
+                // the verified blocks are the leading part of the run
+                List<Long> fixedBlocks = result.getFixedBlocks();
+                if (!fixedBlocks.isEmpty()) {
+                    cursor = fixedBlocks.get(fixedBlocks.size() - 1) + 1;
+                    cursorRepository.save(CURSOR_NAME, cursor);
+                }
+                if (fixedBlocks.size() < batchSize) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            log.error("Finality audit from {} failed ", cursor, e);
+        }
+    }
+
+    /**
+     * @return the heights from the cursor on, up to batchSize, until the first height which is missing or not DONE
+     */
+    private List<Long> findDoneRun(BlockTaskPoolRepository repository) {
+        List<BlockTaskPool> tasks = new ArrayList<>(repository.findByBlockHeightRange(cursor, cursor + batchSize - 1));
+        tasks.sort(Comparator.comparingLong(BlockTaskPool::getBlockHeight));
+        List<Long> doneBlocks = new ArrayList<>();
+        for (BlockTaskPool task : tasks) {
+            if (task.getBlockHeight() != cursor + doneBlocks.size()
+                    || task.getSyncStatus() != TxInfoStatusEnum.DONE.getStatus()) {
+                break;
+            }
+            doneBlocks.add(task.getBlockHeight());
+        }
+        return doneBlocks;
+    }
+}
@@ -0,0 +1,279 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.export.task;
+
+import com.webank.blockchain.data.export.common.constants.BlockConstants;
+import com.webank.blockchain.data.export.common.constants.ContractConstants;
+import com.webank.blockchain.data.export.common.entity.DataExportContext;
+import com.webank.blockchain.data.export.common.entity.ExportConstant;
+import com.webank.blockchain.data.export.db.entity.BlockTaskPool;
+import com.webank.blockchain.data.export.db.repository.ExportLeaseRepository;
+import com.webank.blockchain.data.export.service.BlockDepotService;
+import com.webank.blockchain.data.export.tools.ExecutorUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.Block;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * LeaseCoordinator runs the multi living mode with the export database as the only shared state, without ZooKeeper
+ * and cron scheduling.
+ *
+ * <p>Every instance competes for the leader lease, and its holder prepares the tasks, checks forks and resets the
+ * timeout and error tasks, like PrepareTaskJob. Each depot worker holds one of dataFlowJobShardingTotalCount slot
+ * leases, and leases the task ranges of the height segments of its slot, one after another as long as tasks are
+ * left. The workers of an instance claim distinct slots through DepotSlots, since they share its owner. A worker
+ * without tasks left in its own segments leases those of the other slots, so that the segments of a slot nobody
+ * holds are not left behind. Both loops only wait frequency seconds when there is nothing to do or a
+ * round failed.
+ *
+ * <p>A heartbeat renews the held leases every third of coordinatorLeaseSeconds, also while the leader prepares or a
+ * worker processes a long batch. A lease which can't be renewed is dropped, and the worker stops its batch before
+ * the next block. A crashed instance stops renewing its leases, so its leader and slot leases are taken over once
+ * they expire, and its task ranges go back to INIT through the timeout check.
+ */
+@Slf4j
+public class LeaseCoordinator {
+
+    private static final String LEADER_LEASE = "prepare-leader";
+    private static final String SLOT_LEASE = "depot-slot-";
+
+    private final DataExportContext context;
+    private final PrepareTaskJob prepareTaskJob;
+    private final String owner;
+    private final long leaseMillis;
+    private final int workerCount;
+    private final int slotCount;
+    private final AtomicBoolean runSwitch = new AtomicBoolean(false);
+    private final Set<String> heldLeases = ConcurrentHashMap.newKeySet();
+    private final DepotSlots depotSlots;
+
+    private ExecutorService pool;
+    private ScheduledExecutorService heartbeat;
+
+    public static LeaseCoordinator create(DataExportContext context, PrepareTaskJob prepareTaskJob) {
+        return new LeaseCoordinator(context, prepareTaskJob);
+    }
+
+    private LeaseCoordinator(DataExportContext context, PrepareTaskJob prepareTaskJob) {
+        this.context = context;
+        this.prepareTaskJob = prepareTaskJob;
+        this.owner = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID();
+        this.leaseMillis = TimeUnit.SECONDS.toMillis(context.getConfig().getCoordinatorLeaseSeconds());
+        this.workerCount = context.getConfig().getCoordinatorWorkerCount();
+        this.slotCount = context.getConfig().getDataFlowJobShardingTotalCount();
+        this.depotSlots = DepotSlots.create(slotCount);
+    }
+
+    public void start() {
+        log.info("Lease coordinator {} starts with {} depot workers", owner, workerCount);
+        runSwitch.set(true);
+        ExportConstant.setCurrentContext(context);
+        DataPersistenceManager.setCurrentManager(prepareTaskJob.getDataPersistenceManager());
+        ContractConstants.setCurrentContractMaps(prepareTaskJob.getMapsInfo());
+        long renewMillis = Math.max(leaseMillis / 3, 1);
+        heartbeat = ExecutorUtils.newScheduledThreadPool("lease-heartbeat", 1);
+        heartbeat.scheduleWithFixedDelay(ExecutorUtils.wrap(this::renew), renewMillis, renewMillis,
+                TimeUnit.MILLISECONDS);
+        pool = ExecutorUtils.newFixedThreadPool("lease-coordinator", workerCount + 1);
+        pool.execute(ExecutorUtils.wrap(this::lead));
+        for (int i = 0; i < workerCount; i++) {
+            pool.execute(ExecutorUtils.wrap(this::depot));
+        }
+    }
+
+    public void stop() {
+        runSwitch.set(false);
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        if (heartbeat != null) {
+            heartbeat.shutdownNow();
+        }
+        context.shutdownSharedPools();
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    private void lead() {
+        ExportLeaseRepository leases = DataPersistenceManager.getCurrentManager().getExportLeaseRepository();
+        boolean leader = false;
+        try {
+            while (isRunning()) {
+                try {
+                    boolean acquired = hold(leases, LEADER_LEASE);
+                    if (acquired != leader) {
+                        log.info("Instance {} {} the leader", owner, acquired ? "becomes" : "is no longer");
+                        leader = acquired;
+                    }
+                    long prepared = leader ? prepareTaskJob.prepare() : 0;
+                    if (leader && !heldLeases.contains(LEADER_LEASE)) {
+                        log.warn("Instance {} lost the leader lease while preparing", owner);
+                    }
+                    if (prepared == 0) {
+                        TimeUnit.SECONDS.sleep(context.getConfig().getFrequency());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    log.error("Lease coordinator leader loop failed ", e);
+                    backOff();
+                }
+            }
+        } finally {
+            if (leader) {
+                release(leases, LEADER_LEASE);
+            }
+        }
+    }
+
+    private void depot() {
+        ExportLeaseRepository leases = DataPersistenceManager.getCurrentManager().getExportLeaseRepository();
+        int slot = -1;
+        try {
+            while (isRunning()) {
+                try {
+                    if (slot >= 0 && !hold(leases, SLOT_LEASE + slot)) {
+                        log.warn("Depot worker of {} lost slot {}", owner, slot);
+                        depotSlots.unclaim(slot);
+                        slot = -1;
+                    }
+                    if (slot < 0) {
+                        slot = acquireSlot(leases);
+                        if (slot < 0) {
+                            log.warn("All {} depot slots are taken, wait for a free one", slotCount);
+                            TimeUnit.SECONDS.sleep(context.getConfig().getFrequency());
+                            continue;
+                        }
+                    }
+                    Date leaseTime = new Date();
+                    List<BlockTaskPool> tasks = leaseTasks(slot, leaseTime);
+                    if (tasks.isEmpty()) {
+                        TimeUnit.SECONDS.sleep(context.getConfig().getFrequency());
+                        continue;
+                    }
+                    process(BlockDepotService.fetchBlocks(tasks), slot, leaseTime);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    log.error("Lease coordinator depot loop failed ", e);
+                    backOff();
+                }
+            }
+        } finally {
+            if (slot >= 0) {
+                release(leases, SLOT_LEASE + slot);
+                depotSlots.unclaim(slot);
+            }
+        }
+    }
+
+    /**
+     * lease the tasks of the segments of the slot, or of the other slots if none is left.
+     */
+    private List<BlockTaskPool> leaseTasks(int slot, Date leaseTime) {
+        int leaseSize = context.getConfig().getDataFlowJobLeaseSize();
+        List<BlockTaskPool> tasks = BlockDepotService.leaseTasks(slot, slot, slotCount, leaseTime, leaseSize);
+        for (int i = 1; i < slotCount && tasks.isEmpty(); i++) {
+            tasks = BlockDepotService.leaseTasks(slot, (slot + i) % slotCount, slotCount, leaseTime, leaseSize);
+        }
+        return tasks;
+    }
+
+    private void process(List<Block> blocks, int slot, Date leaseTime) {
+        long total = context.getClient().getBlockNumber().longValue();
+        long leaseExpire = leaseTime.getTime() + BlockConstants.DEPOT_TIME_OUT * 1000L;
+        for (Block b : blocks) {
+            if (System.currentTimeMillis() >= leaseExpire || !isRunning()) {
+                log.warn("Lease from {} expired, block {} and above are left to the timeout check", leaseTime,
+                        b.getNumber());
+                return;
+            }
+            if (!heldLeases.contains(SLOT_LEASE + slot)) {
+                log.warn("Slot {} is lost, block {} and above are left to the timeout check", slot, b.getNumber());
+                return;
+            }
+            if (!BlockDepotService.process(b, total, slot, leaseTime)) {
+                return;
+            }
+        }
+    }
+
+    private int acquireSlot(ExportLeaseRepository leases) {
+        int slot = depotSlots.claim(s -> hold(leases, SLOT_LEASE + s));
+        if (slot >= 0) {
+            log.info("Depot worker of {} takes slot {}", owner, slot);
+        }
+        return slot;
+    }
+
+    /**
+     * renew the held leases, a lease which can't be renewed is no longer held.
+     */
+    private void renew() {
+        try {
+            ExportLeaseRepository leases = DataPersistenceManager.getCurrentManager().getExportLeaseRepository();
+            for (String leaseName : heldLeases) {
+                if (!acquire(leases, leaseName)) {
+                    heldLeases.remove(leaseName);
+                    log.warn("Instance {} failed to renew lease {}", owner, leaseName);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Lease coordinator heartbeat failed ", e);
+        }
+    }
+
+    private boolean hold(ExportLeaseRepository leases, String leaseName) {
+        if (acquire(leases, leaseName)) {
+            heldLeases.add(leaseName);
+            return true;
+        }
+        heldLeases.remove(leaseName);
+        return false;
+    }
+
+    private void release(ExportLeaseRepository leases, String leaseName) {
+        heldLeases.remove(leaseName);
+        leases.release(leaseName, owner);
+    }
+
+    private boolean acquire(ExportLeaseRepository leases, String leaseName) {
+        long now = System.currentTimeMillis();
+        return leases.tryAcquire(leaseName, owner, new Date(now), new Date(now + leaseMillis));
+    }
+
+    private void backOff() {
+        try {
+            TimeUnit.SECONDS.sleep(context.getConfig().getFrequency());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean isRunning() {
+        return runSwitch.get() && !Thread.currentThread().isInterrupted();
+    }
+}
@@ -18,6 +18,7 @@ package com.webank.blockchain.data.export.task;
 import com.webank.blockchain.data.export.common.bo.contract.ContractMapsInfo;
 import com.webank.blockchain.data.export.common.client.ChainClient;
 import com.webank.blockchain.data.export.common.client.ChannelClient;
+import com.webank.blockchain.data.export.common.client.CodeCachingClient;
 import com.webank.blockchain.data.export.common.client.RpcHttpClient;
 import com.webank.blockchain.data.export.common.client.StashClient;
 import com.webank.blockchain.data.export.common.constants.BlockConstants;
@@ -71,7 +72,8 @@ public class PrepareTaskJob implements SimpleJob {
         } catch (ConfigException e) {
             e.printStackTrace();
         }
-        mapsInfo = ContractParser.initContractMaps(context.getConfig().getContractInfoList());
+        mapsInfo = ContractParser.initContractMaps(context.getConfig().getContractInfoList(),
+                context.getClient().getCryptoSuite());
         ContractConstants.setCurrentContractMaps(mapsInfo);
         dataPersistenceManager.buildDataStore();
         try{
@@ -92,6 +94,15 @@ public class PrepareTaskJob implements SimpleJob {
 
     @Override
     public void execute(ShardingContext shardingContext) {
+        prepare();
+    }
+
+    /**
+     * prepare the next batch of tasks, check forks near the chain head and reset the timeout and error tasks.
+     *
+     * @return number of tasks prepared
+     */
+    public long prepare() {
         ExportConstant.setCurrentContext(context);
         DataPersistenceManager.setCurrentManager(dataPersistenceManager);
         ContractConstants.setCurrentContractMaps(mapsInfo);
@@ -111,15 +122,18 @@ public class PrepareTaskJob implements SimpleJob {
             long end = height + context.getConfig().getCrawlBatchUnit() - 1;
             long batchNo = Math.min(total, end);
             boolean certainty = end < total - BlockConstants.MAX_FORK_CERTAINTY_BLOCK_NUMBER;
-            BlockPrepareService.prepareTask(height, batchNo, certainty);
-            if (!certainty) {
+            boolean instantFinality = context.getConfig().isInstantFinality();
+            BlockPrepareService.prepareTask(height, batchNo, certainty || instantFinality);
+            if (!certainty && !instantFinality) {
                 BlockCheckService.checkForks(total);
             }
             BlockCheckService.checkTimeOut();
             BlockCheckService.processErrors();
+            return Math.max(batchNo - height + 1, 0);
         } catch (IOException e) {
-            log.error("Job {}, exception occur in job processing: {}", shardingContext.getTaskId(), e.getMessage());
+            log.error("Prepare task, exception occur in job processing: {}", e.getMessage());
         }
+        return 0;
     }
 
     private void buildClient() throws MalformedURLException, ConfigException {
@@ -133,7 +147,7 @@ public class PrepareTaskJob implements SimpleJob {
                     stashInfo.getPass());
             context.setStashDataSource(dataSource);
             chainClient = new StashClient();
-            context.setClient(chainClient);
+            context.setClient(CodeCachingClient.wrap(chainClient, context.getConfig().getCodeCacheMaxBytes()));
             return;
         }
         if (chainInfo.getRpcUrl() != null) {
@@ -141,7 +155,7 @@ public class PrepareTaskJob implements SimpleJob {
         } else {
             chainClient = new ChannelClient();
         }
-        context.setClient(chainClient);
+        context.setClient(CodeCachingClient.wrap(chainClient, context.getConfig().getCodeCacheMaxBytes()));
     }
 
 }
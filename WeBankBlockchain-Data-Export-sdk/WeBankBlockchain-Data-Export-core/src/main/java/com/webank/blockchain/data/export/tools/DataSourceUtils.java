@@ -9,6 +9,7 @@ import com.webank.blockchain.data.export.common.bo.contract.ContractDetail;
 import com.webank.blockchain.data.export.common.bo.contract.ContractMapsInfo;
 import com.webank.blockchain.data.export.common.constants.ContractConstants;
 import com.webank.blockchain.data.export.common.entity.DataExportContext;
+import com.webank.blockchain.data.export.common.entity.ExportConfig;
 import com.webank.blockchain.data.export.common.entity.ExportConstant;
 import com.webank.blockchain.data.export.common.entity.ExportDataSource;
 import com.webank.blockchain.data.export.common.entity.MysqlDataSource;
@@ -196,11 +197,14 @@ public class DataSourceUtils {
         List<String> tables = MetaUtil.getTables(ds);
         try {
             for (Map.Entry<String, String> entry : TableSQL.tableSqlMap.entrySet()) {
-                if (blackTables.contains(entry.getKey())) {
+                if (blackTables.contains(entry.getKey()) || isUnusedTable(entry.getKey())) {
                     continue;
                 }
                 if (entry.getKey().equals(ExportConstant.BLOCK_TASK_POOL_TABLE)
-                        || entry.getKey().equals(ExportConstant.CONTRACT_INFO_TABLE)) {
+                        || entry.getKey().equals(ExportConstant.CONTRACT_INFO_TABLE)
+                        || entry.getKey().equals(ExportConstant.BLOCK_TASK_RANGE_TABLE)
+                        || entry.getKey().equals(ExportConstant.EXPORT_LEASE_TABLE)
+                        || entry.getKey().equals(ExportConstant.EXPORT_CURSOR_TABLE)) {
                     if (!tables.contains(tablePrefix + entry.getKey() + tablePostfix)) {
                         db.execute(entry.getValue().replaceFirst(entry.getKey(), tablePrefix + entry.getKey() + tablePostfix));
                     }
@@ -228,7 +232,7 @@ public class DataSourceUtils {
             Db db = Db.use(ds);
             List<String> tables = MetaUtil.getTables(ds);
             for (Map.Entry<String, String> entry : TableSQL.tableSqlMap.entrySet()) {
-                if (blackTables.contains(entry.getKey())) {
+                if (blackTables.contains(entry.getKey()) || isUnusedTable(entry.getKey())) {
                     continue;
                 }
                 if (!tables.contains(tablePrefix + entry.getKey() + tablePostfix)) {
@@ -243,6 +247,14 @@ public class DataSourceUtils {
         log.info("export data auto create table success !");
     }
 
+    private static boolean isUnusedTable(String table) {
+        ExportConfig config = ExportConstant.getCurrentContext().getConfig();
+        return (table.equals(ExportConstant.BLOCK_TASK_RANGE_TABLE) && !config.isTaskTrackerEnabled())
+                || (table.equals(ExportConstant.EXPORT_LEASE_TABLE) && !config.isLeaseCoordinatorEnabled())
+                || (table.equals(ExportConstant.EXPORT_CURSOR_TABLE)
+                        && !(config.isInstantFinality() && config.getFinalityAuditSeconds() > 0));
+    }
+
     private static void createMethodAndEventTable(Db db, List<String> blackTables, List<String> tables) {
         ContractMapsInfo mapsInfo = ContractConstants.getCurrentContractMaps();
         if (mapsInfo == null) {
@@ -0,0 +1,65 @@
+package com.webank.blockchain.data.export.tools;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.webank.blockchain.data.export.common.bo.contract.ContractMapsInfo;
+import com.webank.blockchain.data.export.common.constants.ContractConstants;
+import com.webank.blockchain.data.export.common.entity.DataExportContext;
+import com.webank.blockchain.data.export.common.entity.ExportConstant;
+import com.webank.blockchain.data.export.task.DataPersistenceManager;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * The export context, persistence manager and contract maps are bound to the exporting thread,
+ * so tasks handed over to worker threads must carry them along.
+ */
+public class ExecutorUtils {
+
+    public static ExecutorService newFixedThreadPool(String name, int threads) {
+        return Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+    }
+
+    public static ScheduledExecutorService newScheduledThreadPool(String name, int threads) {
+        return Executors.newScheduledThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+    }
+
+    /**
+     * get the pool of the name shared by the current context, it is created with the thread count of the first call
+     * and lives until the context shuts its shared pools down, so that no thread is created per batch.
+     */
+    public static ExecutorService getSharedPool(String name, int threads) {
+        return ExportConstant.getCurrentContext().getSharedPools()
+                .computeIfAbsent(name, k -> newFixedThreadPool(name, threads));
+    }
+
+    public static Runnable wrap(Runnable task) {
+        DataExportContext context = ExportConstant.getCurrentContext();
+        DataPersistenceManager manager = DataPersistenceManager.getCurrentManager();
+        ContractMapsInfo mapsInfo = ContractConstants.getCurrentContractMaps();
+        return () -> {
+            bind(context, manager, mapsInfo);
+            task.run();
+        };
+    }
+
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        DataExportContext context = ExportConstant.getCurrentContext();
+        DataPersistenceManager manager = DataPersistenceManager.getCurrentManager();
+        ContractMapsInfo mapsInfo = ContractConstants.getCurrentContractMaps();
+        return () -> {
+            bind(context, manager, mapsInfo);
+            return task.call();
+        };
+    }
+
+    private static void bind(DataExportContext context, DataPersistenceManager manager, ContractMapsInfo mapsInfo) {
+        ExportConstant.setCurrentContext(context);
+        DataPersistenceManager.setCurrentManager(manager);
+        ContractConstants.setCurrentContractMaps(mapsInfo);
+    }
+}
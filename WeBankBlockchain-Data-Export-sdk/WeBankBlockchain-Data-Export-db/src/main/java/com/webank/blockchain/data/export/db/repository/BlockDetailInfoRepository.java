@@ -23,10 +23,13 @@ import com.webank.blockchain.data.export.common.entity.ExportConstant;
 import com.webank.blockchain.data.export.db.entity.BlockDetailInfo;
 import com.webank.blockchain.data.export.db.tools.BeanUtils;
 import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.sql.SQLException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * BlockDetailInfoRepository
@@ -42,6 +45,7 @@ public class BlockDetailInfoRepository implements RollbackInterface {
 
     private DaoTemplate blockDetailDao;
 
+    @Getter
     private String tableName;
 
 
@@ -131,6 +135,19 @@ public class BlockDetailInfoRepository implements RollbackInterface {
         }
     }
 
+    public Map<Long, String> findBlockHashByBlockHeightRange(long startBlockHeight, long endBlockHeight) {
+        Map<Long, String> hashes = new HashMap<>();
+        try {
+            Db.use(ExportConstant.getCurrentContext().getDataSource()).query(
+                    "select block_height, block_hash from " + tableName + " where block_height between ? and ?",
+                    startBlockHeight, endBlockHeight)
+                    .forEach(e -> hashes.put(e.getLong("block_height"), e.getStr("block_hash")));
+        } catch (SQLException e) {
+            log.error(" BlockDetailInfoRepository findBlockHashByBlockHeightRange failed ", e);
+        }
+        return hashes;
+    }
+
     public BlockDetailInfo findByBlockHeight(long blockHeight){
         Entity entity = null;
         try {
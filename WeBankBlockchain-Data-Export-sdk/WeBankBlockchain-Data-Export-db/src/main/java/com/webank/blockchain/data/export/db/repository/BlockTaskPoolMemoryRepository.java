@@ -0,0 +1,399 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.export.db.repository;
+
+import cn.hutool.core.collection.CollectionUtil;
+import cn.hutool.db.DaoTemplate;
+import cn.hutool.db.Db;
+import cn.hutool.db.Entity;
+import com.google.common.collect.ContiguousSet;
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import com.webank.blockchain.data.export.common.enums.BlockCertaintyEnum;
+import com.webank.blockchain.data.export.common.enums.TxInfoStatusEnum;
+import com.webank.blockchain.data.export.db.entity.BlockTaskPool;
+import com.webank.blockchain.data.export.db.tools.BeanUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * BlockTaskPoolMemoryRepository keeps the task pool of a single instance in memory, as one range set of block heights
+ * per sync status plus the set of uncertain heights, so that scheduling runs no task pool query at all. The state is
+ * checkpointed by checkpoint() as (status, certainty, start, end) rows into the task range table, and rebuilt on
+ * startup from that table, plus the task pool rows above it. Tasks in DOING are checkpointed as TIMEOUT, and on
+ * startup every height above the DONE watermark which is not DONE is loaded as TIMEOUT, since blocks in flight or
+ * done after the last checkpoint may be partly stored. So the timeout check rolls them back before they are claimed
+ * again. The task pool table itself is not written any more while the tracker is used.
+ */
+@Slf4j
+public class BlockTaskPoolMemoryRepository extends BlockTaskPoolRepository {
+
+    private static final int LOAD_PAGE_SIZE = 10000;
+
+    private static final int CHECKPOINT_BATCH_SIZE = 500;
+
+    private static final short INIT = (short) TxInfoStatusEnum.INIT.getStatus();
+
+    private static final short DOING = (short) TxInfoStatusEnum.DOING.getStatus();
+
+    private static final short DONE = (short) TxInfoStatusEnum.DONE.getStatus();
+
+    private static final short TIMEOUT = (short) TxInfoStatusEnum.TIMEOUT.getStatus();
+
+    private static final short UNCERTAIN = (short) BlockCertaintyEnum.UNCERTAIN.getCertainty();
+
+    private static final short FIXED = (short) BlockCertaintyEnum.FIXED.getCertainty();
+
+    private final DaoTemplate blockTaskPoolDao;
+
+    private final DataSource dataSource;
+
+    private final String rangeTableName;
+
+    private final Map<Short, RangeSet<Long>> statusSets = new HashMap<>();
+
+    private final RangeSet<Long> uncertainSet = TreeRangeSet.create();
+
+    private final Map<Long, Date> doingTimes = new HashMap<>();
+
+    private long maxHeight = -1;
+
+    private boolean dirty;
+
+    public BlockTaskPoolMemoryRepository(DaoTemplate blockTaskPoolDao, String tableName, String rangeTableName,
+                                         DataSource dataSource) {
+        super(blockTaskPoolDao, tableName);
+        this.blockTaskPoolDao = blockTaskPoolDao;
+        this.rangeTableName = rangeTableName;
+        this.dataSource = dataSource;
+        for (TxInfoStatusEnum status : TxInfoStatusEnum.values()) {
+            statusSets.put((short) status.getStatus(), TreeRangeSet.create());
+        }
+    }
+
+    /**
+     * rebuild the state from the checkpointed ranges, and from the task pool rows above them. Heights above the DONE
+     * watermark which are not DONE are loaded as TIMEOUT.
+     */
+    public synchronized void load() throws SQLException {
+        List<Entity> ranges = Db.use(dataSource).query("select * from " + rangeTableName);
+        for (Entity range : ranges) {
+            Range<Long> heights = toRange(range.getLong("start_height"), range.getLong("end_height"));
+            short status = range.getShort("sync_status");
+            statusSets.get(status).add(heights);
+            if (range.getShort("certainty") == UNCERTAIN) {
+                uncertainSet.add(heights);
+            }
+            maxHeight = Math.max(maxHeight, range.getLong("end_height"));
+        }
+        long rangeRows = ranges.size();
+        long poolRows = 0;
+        while (true) {
+            List<Entity> page = blockTaskPoolDao.findBySql("where block_height > ? order by block_height limit ?",
+                    maxHeight, LOAD_PAGE_SIZE);
+            if (CollectionUtil.isEmpty(page)) {
+                break;
+            }
+            for (Entity entity : page) {
+                BlockTaskPool task = BeanUtils.toBean(entity, BlockTaskPool.class);
+                put(task.getBlockHeight(), task.getSyncStatus(), task.getCertainty(), null);
+            }
+            poolRows += page.size();
+        }
+        RangeSet<Long> unsettled = unsettled();
+        statusSets.get(INIT).removeAll(unsettled);
+        statusSets.get(DOING).removeAll(unsettled);
+        statusSets.get(TIMEOUT).addAll(unsettled);
+        doingTimes.clear();
+        dirty = poolRows > 0 || !unsettled.isEmpty();
+        log.info("Task tracker is rebuilt from {} checkpoint ranges and {} task pool rows, max height is {}, "
+                + "{} unsettled blocks go to timeout", rangeRows, poolRows, maxHeight, count(unsettled));
+    }
+
+    /**
+     * replace the checkpointed ranges by the current state, if it changed since the last checkpoint.
+     */
+    public void checkpoint() {
+        List<Object[]> rows = new ArrayList<>();
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            Date now = new Date();
+            RangeSet<Long> fixedSet = uncertainSet.complement();
+            statusSets.forEach((status, heights) -> {
+                short persisted = status == DOING ? TIMEOUT : status;
+                heights.asRanges().forEach(range -> {
+                    uncertainSet.subRangeSet(range).asRanges().forEach(r ->
+                            rows.add(toRow(persisted, UNCERTAIN, r, now)));
+                    fixedSet.subRangeSet(range).asRanges().forEach(r -> rows.add(toRow(persisted, FIXED, r, now)));
+                });
+            });
+            dirty = false;
+        }
+        try {
+            Db.use(dataSource).tx(db -> {
+                db.execute("delete from " + rangeTableName);
+                for (List<Object[]> chunk : CollectionUtil.split(rows, CHECKPOINT_BATCH_SIZE)) {
+                    db.executeBatch("insert into " + rangeTableName
+                                    + " (sync_status, certainty, start_height, end_height, depot_updatetime)"
+                                    + " values (?, ?, ?, ?, ?)",
+                            chunk.toArray(new Object[0][]));
+                }
+            });
+            log.info("Task tracker checkpoint {} ranges", rows.size());
+        } catch (SQLException e) {
+            synchronized (this) {
+                dirty = true;
+            }
+            log.error(" BlockTaskPoolMemoryRepository checkpoint failed ", e);
+        }
+    }
+
+    @Override
+    public synchronized BlockTaskPool findTopByOrderByBlockHeightDesc() {
+        return maxHeight < 0 ? null : toTask(maxHeight);
+    }
+
+    @Override
+    public synchronized BlockTaskPool findByBlockHeight(long blockHeight) {
+        return toTask(blockHeight);
+    }
+
+    @Override
+    public synchronized List<BlockTaskPool> findByCertainty(short certainty) {
+        RangeSet<Long> heights = tracked();
+        heights.removeAll(certainty == UNCERTAIN ? uncertainSet.complement() : uncertainSet);
+        return toTasks(heights, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized List<BlockTaskPool> findByBlockHeightRange(long startNumber, long endNumber) {
+        return toTasks(tracked().subRangeSet(toRange(startNumber, endNumber)), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized Optional<List<Long>> findBlockHeightsByBlockHeightRange(long startNumber, long endNumber) {
+        List<Long> result = new ArrayList<>();
+        tracked().subRangeSet(toRange(startNumber, endNumber)).asRanges()
+                .forEach(range -> result.addAll(ContiguousSet.create(range, DiscreteDomain.longs())));
+        return Optional.of(result);
+    }
+
+    @Override
+    public synchronized long countByBlockHeightRange(long startNumber, long endNumber) {
+        return count(tracked().subRangeSet(toRange(startNumber, endNumber)));
+    }
+
+    @Override
+    public synchronized List<BlockTaskPool> findUnNormalRecords() {
+        RangeSet<Long> heights = TreeRangeSet.create(statusSets.get((short) TxInfoStatusEnum.ERROR.getStatus()));
+        heights.addAll(statusSets.get((short) TxInfoStatusEnum.TIMEOUT.getStatus()));
+        return toTasks(heights, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized List<BlockTaskPool> findBySyncStatusOrderByBlockHeightLimit(short syncStatus, int limit) {
+        return toTasks(statusSets.get(syncStatus), limit);
+    }
+
+    @Override
+    public synchronized List<BlockTaskPool> findBySyncStatusAndBlockHeightRangeOrderByBlockHeightLimit(
+            short syncStatus, long startNumber, long endNumber, int limit) {
+        return toTasks(statusSets.get(syncStatus).subRangeSet(toRange(startNumber, endNumber)), limit);
+    }
+
+    @Override
+    public synchronized List<BlockTaskPool> findBySyncStatusAndDepotUpdatetimeLessThan(short syncStatus, Date time) {
+        return toTasks(statusSets.get(syncStatus), Integer.MAX_VALUE).stream()
+                .filter(task -> task.getDepotUpdatetime() != null && task.getDepotUpdatetime().before(time))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized void setSyncStatusByBlockHeight(short syncStatus, Date updateTime, long blockHeight) {
+        if (isTracked(blockHeight)) {
+            setStatus(blockHeight, syncStatus, updateTime);
+        }
+    }
+
+    @Override
+    public synchronized void setCertaintyByBlockHeight(short certainty, long blockHeight) {
+        if (isTracked(blockHeight)) {
+            setCertainty(blockHeight, certainty);
+        }
+    }
+
+    @Override
+    public synchronized void setSyncStatusAndCertaintyByBlockHeight(short syncStatus, short certainty,
+                                                                    long blockHeight) {
+        if (isTracked(blockHeight)) {
+            setStatus(blockHeight, syncStatus, new Date());
+            setCertainty(blockHeight, certainty);
+        }
+    }
+
+    @Override
+    public synchronized void setSyncStatusByBlockHeights(short syncStatus, Date updateTime,
+                                                         Collection<Long> blockHeights) {
+        blockHeights.forEach(blockHeight -> setSyncStatusByBlockHeight(syncStatus, updateTime, blockHeight));
+    }
+
+    @Override
+    public synchronized void setCertaintyByBlockHeights(short certainty, Collection<Long> blockHeights) {
+        blockHeights.forEach(blockHeight -> setCertaintyByBlockHeight(certainty, blockHeight));
+    }
+
+    @Override
+    public synchronized void setSyncStatusAndCertaintyByBlockHeights(short syncStatus, short certainty,
+                                                                     Collection<Long> blockHeights) {
+        blockHeights.forEach(blockHeight -> setSyncStatusAndCertaintyByBlockHeight(syncStatus, certainty,
+                blockHeight));
+    }
+
+    @Override
+    public synchronized void rollback(long blockHeight) {
+        remove(Range.atLeast(blockHeight));
+    }
+
+    @Override
+    public synchronized void rollback(long startBlockHeight, long endBlockHeight) {
+        remove(Range.closedOpen(startBlockHeight, endBlockHeight));
+    }
+
+    @Override
+    public synchronized void saveAll(List<BlockTaskPool> list) {
+        list.stream().filter(task -> !isTracked(task.getBlockHeight())).forEach(this::save);
+    }
+
+    @Override
+    public synchronized void save(BlockTaskPool blockTaskPool) {
+        put(blockTaskPool.getBlockHeight(), blockTaskPool.getSyncStatus(), blockTaskPool.getCertainty(),
+                blockTaskPool.getDepotUpdatetime());
+    }
+
+    private void put(long blockHeight, short syncStatus, short certainty, Date updateTime) {
+        setStatus(blockHeight, syncStatus, updateTime);
+        setCertainty(blockHeight, certainty);
+        maxHeight = Math.max(maxHeight, blockHeight);
+    }
+
+    private void setStatus(long blockHeight, short syncStatus, Date updateTime) {
+        Range<Long> height = toRange(blockHeight, blockHeight);
+        statusSets.values().forEach(heights -> heights.remove(height));
+        statusSets.get(syncStatus).add(height);
+        if (syncStatus == DOING) {
+            doingTimes.put(blockHeight, updateTime);
+        } else {
+            doingTimes.remove(blockHeight);
+        }
+        dirty = true;
+    }
+
+    private void setCertainty(long blockHeight, short certainty) {
+        Range<Long> height = toRange(blockHeight, blockHeight);
+        if (certainty == UNCERTAIN) {
+            uncertainSet.add(height);
+        } else {
+            uncertainSet.remove(height);
+        }
+        dirty = true;
+    }
+
+    private void remove(Range<Long> heights) {
+        statusSets.values().forEach(set -> set.remove(heights));
+        uncertainSet.remove(heights);
+        doingTimes.keySet().removeIf(heights::contains);
+        RangeSet<Long> tracked = tracked();
+        maxHeight = tracked.isEmpty() ? -1 : tracked.span().upperEndpoint() - 1;
+        dirty = true;
+    }
+
+    /**
+     * @return the INIT and DOING heights above the DONE watermark, which is the end of the DONE range starting at the
+     * lowest tracked height
+     */
+    private RangeSet<Long> unsettled() {
+        RangeSet<Long> heights = TreeRangeSet.create(statusSets.get(INIT));
+        heights.addAll(statusSets.get(DOING));
+        RangeSet<Long> tracked = tracked();
+        if (tracked.isEmpty()) {
+            return heights;
+        }
+        Range<Long> done = statusSets.get(DONE).rangeContaining(tracked.span().lowerEndpoint());
+        return done == null ? heights : heights.subRangeSet(Range.atLeast(done.upperEndpoint()));
+    }
+
+    private boolean isTracked(long blockHeight) {
+        return statusSets.values().stream().anyMatch(heights -> heights.contains(blockHeight));
+    }
+
+    private RangeSet<Long> tracked() {
+        RangeSet<Long> heights = TreeRangeSet.create();
+        statusSets.values().forEach(heights::addAll);
+        return heights;
+    }
+
+    private BlockTaskPool toTask(long blockHeight) {
+        for (Map.Entry<Short, RangeSet<Long>> entry : statusSets.entrySet()) {
+            if (entry.getValue().contains(blockHeight)) {
+                return new BlockTaskPool().setBlockHeight(blockHeight).setSyncStatus(entry.getKey())
+                        .setCertainty(uncertainSet.contains(blockHeight) ? UNCERTAIN : FIXED)
+                        .setDepotUpdatetime(doingTimes.get(blockHeight));
+            }
+        }
+        return null;
+    }
+
+    private List<BlockTaskPool> toTasks(RangeSet<Long> heights, int limit) {
+        List<BlockTaskPool> tasks = new ArrayList<>();
+        for (Range<Long> range : heights.asRanges()) {
+            for (long blockHeight : ContiguousSet.create(range, DiscreteDomain.longs())) {
+                if (tasks.size() >= limit) {
+                    return tasks;
+                }
+                tasks.add(toTask(blockHeight));
+            }
+        }
+        return tasks;
+    }
+
+    private static long count(RangeSet<Long> heights) {
+        long count = 0;
+        for (Range<Long> range : heights.asRanges()) {
+            count += range.upperEndpoint() - range.lowerEndpoint();
+        }
+        return count;
+    }
+
+    private static Range<Long> toRange(long startHeight, long endHeight) {
+        return Range.closedOpen(startHeight, endHeight + 1);
+    }
+
+    private static Object[] toRow(short syncStatus, short certainty, Range<Long> range, Date updateTime) {
+        return new Object[]{syncStatus, certainty, range.lowerEndpoint(), range.upperEndpoint() - 1, updateTime};
+    }
+}
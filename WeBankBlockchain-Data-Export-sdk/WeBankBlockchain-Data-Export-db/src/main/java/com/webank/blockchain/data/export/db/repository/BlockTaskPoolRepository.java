@@ -17,16 +17,23 @@ import cn.hutool.core.collection.CollectionUtil;
 import cn.hutool.db.DaoTemplate;
 import cn.hutool.db.Db;
 import cn.hutool.db.Entity;
+import com.webank.blockchain.data.export.common.bo.data.BlockRange;
 import com.webank.blockchain.data.export.common.entity.ExportConstant;
+import com.webank.blockchain.data.export.common.enums.TxInfoStatusEnum;
+import com.webank.blockchain.data.export.common.tools.BlockRangeUtils;
 import com.webank.blockchain.data.export.db.entity.BlockTaskPool;
 import com.webank.blockchain.data.export.db.tools.BeanUtils;
 import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * BlockTaskPoolRepository
@@ -42,6 +49,7 @@ public class BlockTaskPoolRepository implements RollbackInterface {
 
     private DaoTemplate blockTaskPoolDao;
 
+    @Getter
     private String tableName;
 
     public BlockTaskPool findTopByOrderByBlockHeightDesc() {
@@ -103,6 +111,25 @@ public class BlockTaskPoolRepository implements RollbackInterface {
         return result;
     }
 
+    /**
+     * @return the heights of the range in the pool, or empty if the query fails
+     */
+    public Optional<List<Long>> findBlockHeightsByBlockHeightRange(long startNumber, long endNumber) {
+        List<Long> result = new ArrayList<>();
+        try {
+            Db.use(ExportConstant.getCurrentContext().getDataSource()).query(
+                    "select block_height from " + tableName + " where block_height between ? and ?",
+                    startNumber, endNumber).forEach(e -> result.add(e.getLong("block_height")));
+        } catch (SQLException e) {
+            log.error(" BlockTaskPoolRepository findBlockHeightsByBlockHeightRange failed ", e);
+            return Optional.empty();
+        }
+        return Optional.of(result);
+    }
+
+    /**
+     * @return the count of the range in the pool, or -1 if the count fails
+     */
     public long countByBlockHeightRange(long startNumber, long endNumber) {
         try {
             return blockTaskPoolDao.count(Entity.create(tableName).set("block_height",
@@ -110,7 +137,7 @@ public class BlockTaskPoolRepository implements RollbackInterface {
         } catch (SQLException e) {
             log.error(" BlockTaskPoolRepository countByBlockHeightRange failed ", e);
         }
-        return 0;
+        return -1;
     }
 
     public List<BlockTaskPool> findUnNormalRecords() {
@@ -149,6 +176,96 @@ public class BlockTaskPoolRepository implements RollbackInterface {
         return result;
     }
 
+    public List<BlockTaskPool> findBySyncStatusAndBlockHeightRangeOrderByBlockHeightLimit(short syncStatus,
+                                                                                       long startNumber,
+                                                                                       long endNumber, int limit) {
+        List<Entity> entityList = null;
+        try {
+            entityList = blockTaskPoolDao.findBySql(
+                    "where sync_status = ? and block_height >= ? and block_height <= ? order by block_height limit ?",
+                    syncStatus, startNumber, endNumber, limit);
+        } catch (SQLException e) {
+            log.error(" BlockTaskPoolRepository findBySyncStatusAndBlockHeightRangeOrderByBlockHeightLimit failed ", e);
+        }
+        List<BlockTaskPool> result = new ArrayList<>();
+        if(CollectionUtil.isEmpty(entityList)) {
+            return result;
+        }
+        entityList.forEach(e -> {
+            result.add(BeanUtils.toBean(e, BlockTaskPool.class));
+        });
+        return result;
+    }
+
+    public Optional<Long> findMinBlockHeightBySyncStatus(short syncStatus) {
+        try {
+            Number height = Db.use(ExportConstant.getCurrentContext().getDataSource()).queryNumber(
+                    "select min(block_height) from " + tableName + " where sync_status = ?", syncStatus);
+            return Optional.ofNullable(height).map(Number::longValue);
+        } catch (SQLException e) {
+            log.error(" BlockTaskPoolRepository findMinBlockHeightBySyncStatus failed ", e);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * lease at most limit tasks of syncStatus with the lowest heights in the ranges in one atomic update, the ranges
+     * are BETWEEN conditions served by the block height index. The leased tasks are DOING and stamped with
+     * handleItem and leaseTime, by which they are read back.
+     *
+     * @param syncStatus
+     * @param ranges ascending height ranges
+     * @param handleItem the item taking the lease
+     * @param leaseTime the start of the lease, it expires with the depot timeout
+     * @param limit
+     * @return the leased tasks order by block height
+     */
+    public List<BlockTaskPool> leaseBySyncStatusAndBlockHeightRangesOrderByBlockHeightLimit(short syncStatus,
+                                                                                        List<BlockRange> ranges,
+                                                                                        int handleItem,
+                                                                                        Date leaseTime, int limit) {
+        List<BlockTaskPool> result = new ArrayList<>();
+        if (CollectionUtil.isEmpty(ranges)) {
+            return result;
+        }
+        List<Object> params = new ArrayList<>(Arrays.asList(TxInfoStatusEnum.DOING.getStatus(), handleItem,
+                leaseTime, syncStatus));
+        String sql = "update " + tableName + " set sync_status = ?, handle_item = ?, depot_updatetime = ?"
+                + " where sync_status = ? and (" + rangeCondition(ranges, params) + ") order by block_height limit ?";
+        params.add(limit);
+        try {
+            int leased = Db.use(ExportConstant.getCurrentContext().getDataSource()).execute(sql, params.toArray());
+            if (leased == 0) {
+                return result;
+            }
+            blockTaskPoolDao.findBySql(
+                    "where sync_status = ? and handle_item = ? and depot_updatetime = ? order by block_height",
+                    TxInfoStatusEnum.DOING.getStatus(), handleItem, leaseTime)
+                    .forEach(e -> result.add(BeanUtils.toBean(e, BlockTaskPool.class)));
+        } catch (SQLException e) {
+            log.error(" BlockTaskPoolRepository leaseBySyncStatusAndBlockHeightRangesOrderByBlockHeightLimit failed ",
+                    e);
+        }
+        return result;
+    }
+
+    public long countBySyncStatusAndBlockHeightRanges(short syncStatus, List<BlockRange> ranges) {
+        if (CollectionUtil.isEmpty(ranges)) {
+            return 0;
+        }
+        List<Object> params = new ArrayList<>();
+        params.add(syncStatus);
+        String sql = "select count(*) from " + tableName + " where sync_status = ? and ("
+                + rangeCondition(ranges, params) + ")";
+        try {
+            return Db.use(ExportConstant.getCurrentContext().getDataSource()).queryNumber(sql, params.toArray())
+                    .longValue();
+        } catch (SQLException e) {
+            log.error(" BlockTaskPoolRepository countBySyncStatusAndBlockHeightRanges failed ", e);
+        }
+        return 0;
+    }
+
     public List<BlockTaskPool> findBySyncStatusModByBlockHeightLimit(int shardingCount, int shardingItem,
                                                                      short syncStatus, int limit) {
         List<Entity> entityList = null;
@@ -197,6 +314,26 @@ public class BlockTaskPoolRepository implements RollbackInterface {
         }
     }
 
+    /**
+     * set the status of a leased task only while it is still leased to handleItem from leaseTime, the timeout check
+     * may have handed it over to another item meanwhile.
+     *
+     * @return false if the lease is lost, or the update failed
+     */
+    public boolean setSyncStatusByBlockHeightAndLease(short syncStatus, Date updateTime, long blockHeight,
+                                                      int handleItem, Date leaseTime) {
+        try {
+            return Db.use(ExportConstant.getCurrentContext().getDataSource()).execute(
+                    "update " + tableName + " set sync_status = ?, depot_updatetime = ? where block_height = ?"
+                            + " and sync_status = ? and handle_item = ? and depot_updatetime = ?",
+                    syncStatus, updateTime, blockHeight, TxInfoStatusEnum.DOING.getStatus(), handleItem,
+                    leaseTime) > 0;
+        } catch (SQLException e) {
+            log.error(" BlockTaskPoolRepository setSyncStatusByBlockHeightAndLease failed ", e);
+        }
+        return false;
+    }
+
     public void setCertaintyByBlockHeight(short certainty, long blockHeight) {
         try {
             blockTaskPoolDao.update(Entity.create().set("certainty",certainty),
@@ -216,6 +353,49 @@ public class BlockTaskPoolRepository implements RollbackInterface {
         }
     }
 
+    public void setSyncStatusByBlockHeights(short syncStatus, Date updateTime, Collection<Long> blockHeights) {
+        updateByBlockHeights("sync_status = ?, depot_updatetime = ?", blockHeights, syncStatus, updateTime);
+    }
+
+    public void setCertaintyByBlockHeights(short certainty, Collection<Long> blockHeights) {
+        updateByBlockHeights("certainty = ?", blockHeights, certainty);
+    }
+
+    public void setSyncStatusAndCertaintyByBlockHeights(short syncStatus, short certainty,
+                                                        Collection<Long> blockHeights) {
+        updateByBlockHeights("sync_status = ?, certainty = ?", blockHeights, syncStatus, certainty);
+    }
+
+    /**
+     * update the rows of the given heights, contiguous heights are collapsed into BETWEEN ranges and at most
+     * taskPoolBatchSize ranges go into a statement.
+     */
+    private void updateByBlockHeights(String setClause, Collection<Long> blockHeights, Object... setParams) {
+        if (CollectionUtil.isEmpty(blockHeights)) {
+            return;
+        }
+        int batchSize = Math.max(1, ExportConstant.getCurrentContext().getConfig().getTaskPoolBatchSize());
+        for (List<BlockRange> ranges : CollectionUtil.split(BlockRangeUtils.merge(blockHeights), batchSize)) {
+            List<Object> params = new ArrayList<>(Arrays.asList(setParams));
+            String sql = "update " + tableName + " set " + setClause + " where " + rangeCondition(ranges, params);
+            try {
+                Db.use(ExportConstant.getCurrentContext().getDataSource()).execute(sql, params.toArray());
+            } catch (SQLException e) {
+                log.error(" BlockTaskPoolRepository updateByBlockHeights failed ", e);
+            }
+        }
+    }
+
+    private static String rangeCondition(List<BlockRange> ranges, List<Object> params) {
+        StringBuilder condition = new StringBuilder();
+        for (BlockRange range : ranges) {
+            condition.append(condition.length() == 0 ? "" : " or ").append("block_height between ? and ?");
+            params.add(range.getFrom());
+            params.add(range.getTo());
+        }
+        return condition.toString();
+    }
+
     /*
      * @see com.webank.blockchain.data.export.sys.db.repository.RollbackInterface#rollback(long)
      */
@@ -239,8 +419,35 @@ public class BlockTaskPoolRepository implements RollbackInterface {
         }
     }
 
+    /**
+     * insert the tasks whose heights are not in the pool yet, in multi-row statements of at most taskPoolBatchSize
+     * rows, existing rows are kept as they are. Status changes of existing rows go through the set methods. The task
+     * pool is never sharded, so the statement goes through the sharding data source unchanged.
+     */
     public void saveAll(List<BlockTaskPool> list) {
-            list.forEach(this::save);
+        if (CollectionUtil.isEmpty(list)) {
+            return;
+        }
+        int batchSize = Math.max(1, ExportConstant.getCurrentContext().getConfig().getTaskPoolBatchSize());
+        for (List<BlockTaskPool> chunk : CollectionUtil.split(list, batchSize)) {
+            StringBuilder sql = new StringBuilder("insert ignore into ").append(tableName)
+                    .append(" (block_height, certainty, depot_updatetime, handle_item, sync_status) values ");
+            List<Object> params = new ArrayList<>(chunk.size() * 5);
+            for (int i = 0; i < chunk.size(); i++) {
+                BlockTaskPool task = chunk.get(i);
+                sql.append(i == 0 ? "(?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?)");
+                params.add(task.getBlockHeight());
+                params.add(task.getCertainty());
+                params.add(task.getDepotUpdatetime());
+                params.add(task.getHandleItem());
+                params.add(task.getSyncStatus());
+            }
+            try {
+                Db.use(ExportConstant.getCurrentContext().getDataSource()).execute(sql.toString(), params.toArray());
+            } catch (SQLException e) {
+                log.error(" BlockTaskPoolRepository saveAll failed ", e);
+            }
+        }
     }
 
     public void save(BlockTaskPool blockTaskPool) {
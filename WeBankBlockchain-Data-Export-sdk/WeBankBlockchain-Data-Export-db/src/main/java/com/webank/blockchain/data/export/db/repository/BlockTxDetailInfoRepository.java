@@ -21,6 +21,7 @@ import com.webank.blockchain.data.export.common.entity.ExportConstant;
 import com.webank.blockchain.data.export.db.entity.BlockTxDetailInfo;
 import com.webank.blockchain.data.export.db.tools.BeanUtils;
 import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.sql.SQLException;
@@ -41,6 +42,7 @@ public class BlockTxDetailInfoRepository implements RollbackInterface {
 
     private DaoTemplate blockTxDetailInfoDao;
 
+    @Getter
     private String tableName;
 
     /**
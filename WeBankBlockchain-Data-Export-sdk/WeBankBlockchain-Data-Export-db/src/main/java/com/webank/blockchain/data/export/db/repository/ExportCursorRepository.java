@@ -0,0 +1,58 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.export.db.repository;
+
+import cn.hutool.db.Db;
+import cn.hutool.db.Entity;
+import com.webank.blockchain.data.export.common.entity.ExportConstant;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.Optional;
+
+/**
+ * ExportCursorRepository keeps named block height cursors in the export_cursor table, so that a background task
+ * walking the history goes on from where it stopped after a restart.
+ */
+@Slf4j
+@AllArgsConstructor
+public class ExportCursorRepository {
+
+    private String tableName;
+
+    /**
+     * @param cursorName
+     * @return the saved height, or empty if the cursor is never saved
+     * @throws SQLException if the cursor can not be read, so that the caller does not restart from the beginning
+     */
+    public Optional<Long> find(String cursorName) throws SQLException {
+        Entity entity = Db.use(ExportConstant.getCurrentContext().getDataSource()).queryOne(
+                "select cursor_height from " + tableName + " where cursor_name = ?", cursorName);
+        return entity == null ? Optional.empty() : Optional.ofNullable(entity.getLong("cursor_height"));
+    }
+
+    public void save(String cursorName, long cursorHeight) {
+        try {
+            Date now = new Date();
+            Db.use(ExportConstant.getCurrentContext().getDataSource()).execute("insert into " + tableName
+                            + " (cursor_name, cursor_height, update_time) values (?, ?, ?)"
+                            + " on duplicate key update cursor_height = ?, update_time = ?",
+                    cursorName, cursorHeight, now, cursorHeight, now);
+        } catch (SQLException e) {
+            log.error(" ExportCursorRepository save failed ", e);
+        }
+    }
+}
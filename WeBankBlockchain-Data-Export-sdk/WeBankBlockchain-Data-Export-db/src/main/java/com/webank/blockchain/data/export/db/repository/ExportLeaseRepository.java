@@ -0,0 +1,77 @@
+/**
+ * Copyright 2020 Webank.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.webank.blockchain.data.export.db.repository;
+
+import cn.hutool.db.Db;
+import com.webank.blockchain.data.export.common.entity.ExportConstant;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.util.Date;
+
+/**
+ * ExportLeaseRepository keeps named leases in the export_lease table, a lease is held by its owner until its expire
+ * time, and can be taken over by another owner after that. Both acquiring and renewing are one conditional update,
+ * so that at most one owner holds a lease at a time. The instances compare their own clocks with the expire time,
+ * so their clocks must be synchronized well within a lease.
+ */
+@Slf4j
+@AllArgsConstructor
+public class ExportLeaseRepository {
+
+    private String tableName;
+
+    /**
+     * acquire or renew a lease.
+     *
+     * @param leaseName
+     * @param owner
+     * @param now
+     * @param expireTime
+     * @return true if owner holds the lease until expireTime
+     */
+    public boolean tryAcquire(String leaseName, String owner, Date now, Date expireTime) {
+        try {
+            Db db = Db.use(ExportConstant.getCurrentContext().getDataSource());
+            int inserted = db.execute("insert ignore into " + tableName + " (lease_name, owner, expire_time)"
+                    + " values (?, ?, ?)", leaseName, owner, expireTime);
+            if (inserted > 0) {
+                return true;
+            }
+            return db.execute("update " + tableName + " set owner = ?, expire_time = ?"
+                            + " where lease_name = ? and (owner = ? or expire_time < ?)",
+                    owner, expireTime, leaseName, owner, now) > 0;
+        } catch (SQLException e) {
+            log.error(" ExportLeaseRepository tryAcquire failed ", e);
+        }
+        return false;
+    }
+
+    /**
+     * release a lease held by owner, so that another owner can take it over at once.
+     *
+     * @param leaseName
+     * @param owner
+     */
+    public void release(String leaseName, String owner) {
+        try {
+            Db.use(ExportConstant.getCurrentContext().getDataSource()).execute(
+                    "update " + tableName + " set expire_time = ? where lease_name = ? and owner = ?",
+                    new Date(0), leaseName, owner);
+        } catch (SQLException e) {
+            log.error(" ExportLeaseRepository release failed ", e);
+        }
+    }
+}
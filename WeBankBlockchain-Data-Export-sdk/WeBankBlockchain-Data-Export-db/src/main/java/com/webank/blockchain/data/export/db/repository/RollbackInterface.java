@@ -13,6 +13,12 @@
  */
 package com.webank.blockchain.data.export.db.repository;
 
+import cn.hutool.db.Db;
+import com.webank.blockchain.data.export.common.bo.data.BlockRange;
+
+import java.sql.SQLException;
+import java.util.List;
+
 /**
  * RollbackOneInterface
  *
@@ -35,4 +41,24 @@ public interface RollbackInterface {
      */
      void rollback(long startBlockHeight, long endBlockHeight);
 
+    /**
+     * @return the table to rollback
+     */
+    String getTableName();
+
+    /**
+     * rollback the ranges with db, inside its transaction if any. Failures are thrown instead of logged, so that the
+     * transaction is rolled back as a whole.
+     *
+     * @param db
+     * @param ranges ranges of heights, both ends inclusive
+     * @throws SQLException
+     */
+    default void rollback(Db db, List<BlockRange> ranges) throws SQLException {
+        for (BlockRange range : ranges) {
+            db.execute("delete from " + getTableName() + " where block_height between ? and ?", range.getFrom(),
+                    range.getTo());
+        }
+    }
+
 }
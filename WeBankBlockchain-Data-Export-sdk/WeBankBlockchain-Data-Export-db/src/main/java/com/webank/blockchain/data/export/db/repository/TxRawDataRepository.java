@@ -19,6 +19,7 @@ import cn.hutool.db.Entity;
 import com.webank.blockchain.data.export.common.entity.ExportConstant;
 import com.webank.blockchain.data.export.db.entity.TxRawData;
 import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.sql.SQLException;
@@ -35,6 +36,7 @@ public class TxRawDataRepository implements RollbackInterface {
 
     private DaoTemplate txRawDataDao;
 
+    @Getter
     private String tableName;
 
     /*
@@ -19,6 +19,7 @@ import cn.hutool.db.Entity;
 import com.webank.blockchain.data.export.common.entity.ExportConstant;
 import com.webank.blockchain.data.export.db.entity.TxReceiptRawData;
 import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.sql.SQLException;
@@ -34,6 +35,7 @@ public class TxReceiptRawDataRepository implements RollbackInterface {
 
     private DaoTemplate txReceiptRawDataDao;
 
+    @Getter
     private String tableName;
 
     
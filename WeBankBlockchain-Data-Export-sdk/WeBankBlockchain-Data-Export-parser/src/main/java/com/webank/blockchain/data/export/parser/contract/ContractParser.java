@@ -2,16 +2,22 @@ package com.webank.blockchain.data.export.parser.contract;
 
 import cn.hutool.core.collection.CollectionUtil;
 import cn.hutool.crypto.digest.MD5;
+import com.webank.blockchain.data.export.common.bo.contract.ContractCodeIndex;
+import com.webank.blockchain.data.export.common.bo.contract.ContractCodec;
 import com.webank.blockchain.data.export.common.bo.contract.ContractDetail;
 import com.webank.blockchain.data.export.common.bo.contract.ContractMapsInfo;
+import com.webank.blockchain.data.export.common.bo.contract.EventBloomFilter;
 import com.webank.blockchain.data.export.common.bo.contract.MethodMetaInfo;
 import com.webank.blockchain.data.export.common.bo.data.ContractInfoBO;
 import com.webank.blockchain.data.export.common.entity.ContractInfo;
 import lombok.extern.slf4j.Slf4j;
+import org.fisco.bcos.sdk.crypto.CryptoSuite;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author wesleywang
@@ -21,7 +27,7 @@ import java.util.Map;
 @Slf4j
 public class ContractParser {
 
-    public static ContractMapsInfo initContractMaps(List<ContractInfo> contractInfoList){
+    public static ContractMapsInfo initContractMaps(List<ContractInfo> contractInfoList, CryptoSuite cryptoSuite){
         if (CollectionUtil.isEmpty(contractInfoList)){
             return null;
         }
@@ -30,6 +36,7 @@ public class ContractParser {
         Map<String, ContractDetail> contractBinaryMap = new HashMap<>();
         contractMapsInfo.setContractBinaryMap(contractBinaryMap);
         contractMapsInfo.setMethodIdMap(methodIdMap);
+        Set<String> eventTopics = new HashSet<>();
         MD5 md5 = MD5.create();
         for (ContractInfo entry : contractInfoList) {
             ContractDetail contractDetail = new ContractDetail();
@@ -49,11 +56,15 @@ public class ContractParser {
             contractDetail.setContractInfoBO(contractInfoBO);
             contractDetail.setMethodMetaInfos(MethodParser.parseToInfoList(abi,entry.getContractName()));
             contractDetail.setEventMetaInfos(EventParser.parseToInfoList(abi,entry.getContractName()));
+            contractDetail.setContractCodec(ContractCodec.create(abi, contractDetail.getEventMetaInfos(), cryptoSuite));
+            eventTopics.addAll(contractDetail.getContractCodec().getEventTopics());
             for (MethodMetaInfo methodMetaInfo : contractDetail.getMethodMetaInfos()) {
                 methodIdMap.put(methodMetaInfo.getMethodId(), methodMetaInfo);
                 contractBinaryMap.put(binary, contractDetail);
             }
         }
+        contractMapsInfo.setContractCodeIndex(new ContractCodeIndex(contractBinaryMap));
+        contractMapsInfo.setEventBloomFilter(new EventBloomFilter(eventTopics, cryptoSuite));
         return contractMapsInfo;
     }
 }
@@ -14,9 +14,11 @@
 package com.webank.blockchain.data.export.parser.facade;
 
 import com.google.common.base.Stopwatch;
+import com.webank.blockchain.data.export.common.bo.data.BlockBundle;
 import com.webank.blockchain.data.export.common.bo.data.BlockContractInfoBO;
 import com.webank.blockchain.data.export.common.bo.data.BlockInfoBO;
 import com.webank.blockchain.data.export.common.bo.data.BlockMethodInfo;
+import com.webank.blockchain.data.export.common.client.ChainClient;
 import com.webank.blockchain.data.export.common.entity.ExportConstant;
 import com.webank.blockchain.data.export.common.enums.DataType;
 import com.webank.blockchain.data.export.parser.handler.BlockCrawlerHandler;
@@ -24,10 +26,17 @@ import com.webank.blockchain.data.export.parser.handler.ContractCrawlerHandler;
 import com.webank.blockchain.data.export.parser.handler.EventCrawlerHandler;
 import com.webank.blockchain.data.export.parser.handler.MethodCrawlerHandler;
 import lombok.extern.slf4j.Slf4j;
+import org.fisco.bcos.sdk.client.protocol.model.JsonTransactionResponse;
 import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.Block;
+import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.TransactionObject;
+import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.TransactionResult;
+import org.fisco.bcos.sdk.model.TransactionReceipt;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -48,12 +57,16 @@ public class ParseFacade {
     public static BlockInfoBO parse(Block block) throws IOException {
         BlockInfoBO blockInfo = new BlockInfoBO();
         Stopwatch st = Stopwatch.createStarted();
-        BlockContractInfoBO contractInfoBO = ContractCrawlerHandler.crawl(block);
+        BlockBundle bundle = fetchBundle(block);
+        log.debug("Block {} , receipts fetch useTime {} ", block.getNumber(),
+                st.stop().elapsed(TimeUnit.MILLISECONDS));
+        st.start();
+        BlockContractInfoBO contractInfoBO = ContractCrawlerHandler.crawl(bundle);
         log.debug("Block {} , Account crawler handle useTime {} ", block.getNumber(),
                 st.stop().elapsed(TimeUnit.MILLISECONDS));
         st.start();
         BlockMethodInfo blockMethodInfo =
-                MethodCrawlerHandler.crawl(block, contractInfoBO.getTxHashContractAddressMapping());
+                MethodCrawlerHandler.crawl(bundle, contractInfoBO.getTxHashContractAddressMapping());
 
         log.debug("Block {} , method crawler handle useTime {} ", block.getNumber(),
                 st.stop().elapsed(TimeUnit.MILLISECONDS));
@@ -78,7 +91,7 @@ public class ParseFacade {
             blockInfo.setTxReceiptRawDataBOList(blockMethodInfo.getTxReceiptRawDataBOList());
         }
         if (!blackList.contains(DataType.EVENT_TABLE)){
-            blockInfo.setEventInfoList(EventCrawlerHandler.crawl(block, blockMethodInfo.getTxHashContractNameMapping()));
+            blockInfo.setEventInfoList(EventCrawlerHandler.crawl(bundle, blockMethodInfo.getTxHashContractNameMapping()));
         }
         if (!blackList.contains(DataType.METHOD_TABLE)){
             blockInfo.setMethodInfoList(blockMethodInfo.getMethodInfoList());
@@ -89,4 +102,21 @@ public class ParseFacade {
         return blockInfo;
     }
 
+    /**
+     * fetch the receipt of every transaction of the block once, the block already carries the full transactions.
+     */
+    @SuppressWarnings("rawtypes")
+    public static BlockBundle fetchBundle(Block block) {
+        ChainClient client = ExportConstant.getCurrentContext().getClient();
+        Map<String, JsonTransactionResponse> transactions = new LinkedHashMap<>();
+        Map<String, TransactionReceipt> receipts = new HashMap<>();
+        for (TransactionResult result : block.getTransactions()) {
+            JsonTransactionResponse transaction = ((TransactionObject) result).get();
+            transactions.put(transaction.getHash(), transaction);
+            client.getTransactionReceipt(transaction.getHash()).getTransactionReceipt()
+                    .ifPresent(receipt -> receipts.put(transaction.getHash(), receipt));
+        }
+        return new BlockBundle(block, transactions, receipts);
+    }
+
 }
@@ -14,17 +14,15 @@
 package com.webank.blockchain.data.export.parser.handler;
 
 import com.webank.blockchain.data.export.common.bo.contract.ContractDetail;
+import com.webank.blockchain.data.export.common.bo.data.BlockBundle;
 import com.webank.blockchain.data.export.common.bo.data.BlockContractInfoBO;
 import com.webank.blockchain.data.export.common.bo.data.ContractInfoBO;
 import com.webank.blockchain.data.export.common.bo.data.DeployedAccountInfoBO;
 import com.webank.blockchain.data.export.common.constants.ContractConstants;
-import com.webank.blockchain.data.export.common.entity.ExportConstant;
 import com.webank.blockchain.data.export.common.tools.DateUtils;
 import com.webank.blockchain.data.export.parser.service.ContractConstructorService;
 import lombok.extern.slf4j.Slf4j;
 import org.fisco.bcos.sdk.client.protocol.model.JsonTransactionResponse;
-import org.fisco.bcos.sdk.client.protocol.response.BcosBlock;
-import org.fisco.bcos.sdk.client.protocol.response.BcosTransactionReceipt;
 import org.fisco.bcos.sdk.model.TransactionReceipt;
 import org.fisco.bcos.sdk.utils.Numeric;
 
@@ -44,63 +42,46 @@ import java.util.Optional;
 @Slf4j
 public class ContractCrawlerHandler {
 
-    @SuppressWarnings("rawtypes")
-    public static BlockContractInfoBO crawl(BcosBlock.Block block) throws IOException {
+    public static BlockContractInfoBO crawl(BlockBundle bundle) throws IOException {
         List<DeployedAccountInfoBO> deployedAccountInfoBOList = new ArrayList<>();
         Map<String, String> map = new HashMap<>();
-        List<BcosBlock.TransactionResult> transactionResults = block.getTransactions();
-        for (BcosBlock.TransactionResult result : transactionResults) {
-            BcosBlock.TransactionObject to = (BcosBlock.TransactionObject) result;
-            JsonTransactionResponse transaction = to.get();
-            BcosTransactionReceipt bcosTransactionReceipt = ExportConstant.getCurrentContext().getClient()
-                    .getTransactionReceipt(transaction.getHash());
-            Optional<TransactionReceipt> opt = bcosTransactionReceipt.getTransactionReceipt();
+        Date blockTimeStamp = DateUtils.hexStrToDate(bundle.getBlock().getTimestamp());
+        for (JsonTransactionResponse transaction : bundle.getTransactions().values()) {
+            Optional<TransactionReceipt> opt = bundle.getReceipt(transaction.getHash());
             if (opt.isPresent()) {
-                TransactionReceipt tr = opt.get();
-
-                handle(tr, DateUtils.hexStrToDate(block.getTimestamp())).ifPresent(e -> {
+                handle(transaction, opt.get(), blockTimeStamp).ifPresent(e -> {
                     deployedAccountInfoBOList.add(e);
                     map.putIfAbsent(e.getTxHash(), e.getContractAddress());
                 });
-
             }
         }
         return new BlockContractInfoBO(map,deployedAccountInfoBOList);
     }
 
-    public static Optional<DeployedAccountInfoBO> handle(TransactionReceipt receipt, Date blockTimeStamp) throws IOException {
-        Optional<JsonTransactionResponse> optt = ExportConstant.getCurrentContext().getClient().getTransactionByHash
-                (receipt.getTransactionHash()).getTransaction();
-        if (optt.isPresent()) {
-            JsonTransactionResponse transaction = optt.get();
-            // get constructor function transaction by judging if transaction's param named to is null
-            if (transaction.getTo() == null || transaction.getTo().equals(ContractConstants.EMPTY_ADDRESS)) {
-                String contractAddress = receipt.getContractAddress();
-                String input = ExportConstant.getCurrentContext().getClient().getCode(contractAddress);
-                if (input == null) {
-                    log.warn("blockNumber: {}, contractAddress: {}, getCode not find the input", receipt.getBlockNumber(), contractAddress);
-                    return Optional.empty();
-                }
-                Map.Entry<String, ContractDetail> entry = ContractConstructorService.getConstructorNameByCode(input);
-                log.debug("blockNumber: {}, input: {}", receipt.getBlockNumber(), input);
-                if (entry == null){
-                    return Optional.empty();
-                }
-                ContractDetail contractDetail = entry.getValue();
-                ContractInfoBO contractInfoBO = contractDetail.getContractInfoBO();
-                if (contractInfoBO == null) {
-                    return Optional.empty();
-                }
-                DeployedAccountInfoBO deployedAccountInfoBO = new DeployedAccountInfoBO();
-                deployedAccountInfoBO.setBlockTimeStamp(blockTimeStamp)
-                        .setBlockHeight(Numeric.toBigInt(receipt.getBlockNumber()).longValue())
-                        .setContractAddress(receipt.getContractAddress())
-                        .setContractName(contractInfoBO.getContractName())
-                        .setAbiHash(contractInfoBO.getAbiHash())
-                        .setBinary(contractInfoBO.getContractBinary())
-                        .setTxHash(receipt.getTransactionHash());
-                return Optional.of(deployedAccountInfoBO);
+    public static Optional<DeployedAccountInfoBO> handle(JsonTransactionResponse transaction,
+                                                         TransactionReceipt receipt, Date blockTimeStamp) {
+        // get constructor function transaction by judging if transaction's param named to is null
+        if (transaction.getTo() == null || transaction.getTo().equals(ContractConstants.EMPTY_ADDRESS)) {
+            String contractAddress = receipt.getContractAddress();
+            Map.Entry<String, ContractDetail> entry = ContractConstructorService.getConstructorNameByAddress(contractAddress);
+            log.debug("blockNumber: {}, contractAddress: {}", receipt.getBlockNumber(), contractAddress);
+            if (entry == null){
+                return Optional.empty();
+            }
+            ContractDetail contractDetail = entry.getValue();
+            ContractInfoBO contractInfoBO = contractDetail.getContractInfoBO();
+            if (contractInfoBO == null) {
+                return Optional.empty();
             }
+            DeployedAccountInfoBO deployedAccountInfoBO = new DeployedAccountInfoBO();
+            deployedAccountInfoBO.setBlockTimeStamp(blockTimeStamp)
+                    .setBlockHeight(Numeric.toBigInt(receipt.getBlockNumber()).longValue())
+                    .setContractAddress(receipt.getContractAddress())
+                    .setContractName(contractInfoBO.getContractName())
+                    .setAbiHash(contractInfoBO.getAbiHash())
+                    .setBinary(contractInfoBO.getContractBinary())
+                    .setTxHash(receipt.getTransactionHash());
+            return Optional.of(deployedAccountInfoBO);
         }
         return Optional.empty();
     }
@@ -17,9 +17,13 @@ import cn.hutool.core.collection.CollectionUtil;
 import cn.hutool.core.collection.ListUtil;
 import cn.hutool.json.JSONUtil;
 import com.google.common.collect.Maps;
+import com.webank.blockchain.data.export.common.bo.contract.ContractCodec;
 import com.webank.blockchain.data.export.common.bo.contract.ContractDetail;
+import com.webank.blockchain.data.export.common.bo.contract.ContractMapsInfo;
+import com.webank.blockchain.data.export.common.bo.contract.EventBloomFilter;
 import com.webank.blockchain.data.export.common.bo.contract.EventMetaInfo;
 import com.webank.blockchain.data.export.common.bo.contract.FieldVO;
+import com.webank.blockchain.data.export.common.bo.data.BlockBundle;
 import com.webank.blockchain.data.export.common.bo.data.EventBO;
 import com.webank.blockchain.data.export.common.constants.ContractConstants;
 import com.webank.blockchain.data.export.common.entity.ContractInfo;
@@ -29,12 +33,8 @@ import com.webank.blockchain.data.export.common.entity.TableSQL;
 import com.webank.blockchain.data.export.common.tools.DateUtils;
 import com.webank.blockchain.data.export.parser.service.TransactionService;
 import lombok.extern.slf4j.Slf4j;
-import org.fisco.bcos.sdk.abi.ABICodecException;
 import org.fisco.bcos.sdk.client.protocol.model.JsonTransactionResponse;
 import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.Block;
-import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.TransactionObject;
-import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.TransactionResult;
-import org.fisco.bcos.sdk.client.protocol.response.BcosTransactionReceipt;
 import org.fisco.bcos.sdk.model.TransactionReceipt;
 import org.fisco.bcos.sdk.utils.Numeric;
 
@@ -43,7 +43,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 /**
  * EventCrawlerHandler
@@ -56,20 +55,27 @@ import java.util.stream.Collectors;
 @Slf4j
 public class EventCrawlerHandler {
 
-    @SuppressWarnings({ "rawtypes", "unused" })
-    public static List<EventBO> crawl(Block block, Map<String, String> txHashContractNameMapping) throws IOException {
-        List<TransactionResult> transactionResults = block.getTransactions();
+    public static List<EventBO> crawl(BlockBundle bundle, Map<String, String> txHashContractNameMapping) throws IOException {
         List<EventBO> boList = new ArrayList<>();
-        for (TransactionResult result : transactionResults) {
-            TransactionObject to = (TransactionObject) result;
-            JsonTransactionResponse transaction = to.get();
-            BcosTransactionReceipt bcosTransactionReceipt = ExportConstant.getCurrentContext().getClient()
-                    .getTransactionReceipt(transaction.getHash());
-            Optional<TransactionReceipt> opt = bcosTransactionReceipt.getTransactionReceipt();
+        ContractMapsInfo contractMapsInfo = ContractConstants.getCurrentContractMaps();
+        if (contractMapsInfo == null) {
+            return boList;
+        }
+        EventBloomFilter bloomFilter = contractMapsInfo.getEventBloomFilter();
+        if (!bloomFilter.mightContain(bundle.getBlock().getLogsBloom())) {
+            return boList;
+        }
+        for (JsonTransactionResponse transaction : bundle.getTransactions().values()) {
+            Optional<TransactionReceipt> opt = bundle.getReceipt(transaction.getHash());
             if (opt.isPresent()) {
                 TransactionReceipt tr = opt.get();
+                if (!bloomFilter.mightContain(tr)) {
+                    continue;
+                }
+                // the receipt is shared with the other handlers, so the called contract is not written back to it
+                String contractAddress = tr.getContractAddress();
                 if (transaction.getTo() != null && !transaction.getTo().equals(ContractConstants.EMPTY_ADDRESS)) {
-                    tr.setContractAddress(transaction.getTo());
+                    contractAddress = transaction.getTo();
                 }
                 Optional<String> contractName = TransactionService.getContractNameByTransaction(
                         transaction, txHashContractNameMapping);
@@ -81,65 +87,51 @@ public class EventCrawlerHandler {
                 if (abi == null) {
                     continue;
                 }
-                boList.addAll(parserEvent(contractAbiMap, contractName.get(), abi, tr,block));
+                boList.addAll(parserEvent(contractAbiMap, contractName.get(), abi, tr, contractAddress,
+                        bundle.getBlock()));
             }
         }
         return boList;
     }
 
     private static List<EventBO> parserEvent(Map<String, ContractInfo> contractAbiMap, String contractName, String abi,
-                                             TransactionReceipt tr, Block block){
+                                             TransactionReceipt tr, String contractAddress, Block block){
         List<EventBO> boList = new ArrayList<>();
         ContractDetail contractDetail = ContractConstants.getCurrentContractMaps().getContractBinaryMap()
                 .get(contractAbiMap.get(contractName).getBinary());
         ExportConfig config = ExportConstant.getCurrentContext().getConfig();
-        List<EventMetaInfo> eventMetaInfos = contractDetail.getEventMetaInfos();
-
-        Map<String, EventMetaInfo> eventMetaInfoMap = eventMetaInfos.stream()
-                .collect(Collectors.toMap(EventMetaInfo::getEventName, e->e));
-        Map<String, List<List<Object>>> events = null;
-        try {
-            events = ExportConstant.getCurrentContext().getDecoder()
-                    .decodeEvents(abi, tr.getLogs());
-        } catch (ABICodecException e) {
-            log.error("decoder.decodeEvents failed", e);
-        }
-        for (Map.Entry<String,List<List<Object>>> entry : events.entrySet()) {
-
-            if (!eventMetaInfoMap.containsKey(entry.getKey())){
-                continue;
-            }
-            EventMetaInfo eventMetaInfo = eventMetaInfoMap.get(entry.getKey());
-            for (List<Object> params : entry.getValue()) {
-                EventBO eventBO = new EventBO();
-                Map<String, Object> entity = Maps.newHashMap();
-                int i = 0;
-                for (FieldVO fieldVO : eventMetaInfo.getList()) {
-                    if (CollectionUtil.isNotEmpty(config.getIgnoreParam())
-                            && config.getIgnoreParam().containsKey(eventMetaInfo.getContractName())){
-                        Map<String,List<String>> ignoreParamMap = config.getIgnoreParam().get(contractName);
-                        if (ignoreParamMap.containsKey(eventMetaInfo.getEventName())){
-                            if (ignoreParamMap.get(eventMetaInfo.getEventName()).contains(fieldVO.getSolidityName())){
-                                i++;
-                                continue;
-                            }
+        // only the logs of the exported events are decoded, looked up by their first topic
+        for (ContractCodec.EventValues eventValues : contractDetail.getContractCodec().decodeEvents(tr.getLogs())) {
+            EventMetaInfo eventMetaInfo = eventValues.getEventMetaInfo();
+            List<Object> params = eventValues.getParams();
+            EventBO eventBO = new EventBO();
+            Map<String, Object> entity = Maps.newHashMap();
+            int i = 0;
+            for (FieldVO fieldVO : eventMetaInfo.getList()) {
+                if (CollectionUtil.isNotEmpty(config.getIgnoreParam())
+                        && config.getIgnoreParam().containsKey(eventMetaInfo.getContractName())){
+                    Map<String,List<String>> ignoreParamMap = config.getIgnoreParam().get(contractName);
+                    if (ignoreParamMap.containsKey(eventMetaInfo.getEventName())){
+                        if (ignoreParamMap.get(eventMetaInfo.getEventName()).contains(fieldVO.getSolidityName())){
+                            i++;
+                            continue;
                         }
                     }
-                    if (params.get(i) instanceof List){
-                        entity.put(fieldVO.getSqlName(), JSONUtil.toJsonStr(params.get(i++)));
-                        continue;
-                    }
-                    entity.put(fieldVO.getSqlName(), params.get(i++));
                 }
-                entity.put("block_time_stamp", DateUtils.hexStrToDate(block.getTimestamp()));
-                entity.put("tx_hash",tr.getTransactionHash());
-                entity.put("contract_address", tr.getContractAddress());
-                entity.put("block_height", Numeric.toBigInt(tr.getBlockNumber()).longValue());
-                eventBO.setEntity(entity);
-                eventBO.setToAddress(tr.getTo());
-                eventBO.setTable(TableSQL.getTableName(contractName,eventMetaInfo.getEventName() + "_event"));
-                boList.add(eventBO);
+                if (params.get(i) instanceof List){
+                    entity.put(fieldVO.getSqlName(), JSONUtil.toJsonStr(params.get(i++)));
+                    continue;
+                }
+                entity.put(fieldVO.getSqlName(), params.get(i++));
             }
+            entity.put("block_time_stamp", DateUtils.hexStrToDate(block.getTimestamp()));
+            entity.put("tx_hash",tr.getTransactionHash());
+            entity.put("contract_address", contractAddress);
+            entity.put("block_height", Numeric.toBigInt(tr.getBlockNumber()).longValue());
+            eventBO.setEntity(entity);
+            eventBO.setToAddress(tr.getTo());
+            eventBO.setTable(TableSQL.getTableName(contractName,eventMetaInfo.getEventName() + "_event"));
+            boList.add(eventBO);
         }
         return boList;
     }
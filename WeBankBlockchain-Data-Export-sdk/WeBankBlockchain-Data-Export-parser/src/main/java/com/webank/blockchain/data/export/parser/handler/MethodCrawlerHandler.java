@@ -15,14 +15,18 @@ package com.webank.blockchain.data.export.parser.handler;
 
 import cn.hutool.core.collection.CollectionUtil;
 import cn.hutool.json.JSONUtil;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.google.common.collect.Maps;
+import com.webank.blockchain.data.export.common.bo.contract.ContractCodec;
 import com.webank.blockchain.data.export.common.bo.contract.FieldVO;
 import com.webank.blockchain.data.export.common.bo.contract.MethodMetaInfo;
+import com.webank.blockchain.data.export.common.bo.data.BlockBundle;
 import com.webank.blockchain.data.export.common.bo.data.BlockMethodInfo;
 import com.webank.blockchain.data.export.common.bo.data.BlockTxDetailInfoBO;
 import com.webank.blockchain.data.export.common.bo.data.MethodBO;
 import com.webank.blockchain.data.export.common.bo.data.TxRawDataBO;
 import com.webank.blockchain.data.export.common.bo.data.TxReceiptRawDataBO;
+import com.webank.blockchain.data.export.common.constants.ContractConstants;
 import com.webank.blockchain.data.export.common.entity.ContractInfo;
 import com.webank.blockchain.data.export.common.entity.ExportConfig;
 import com.webank.blockchain.data.export.common.entity.ExportConstant;
@@ -30,16 +34,13 @@ import com.webank.blockchain.data.export.common.entity.TableSQL;
 import com.webank.blockchain.data.export.common.enums.IgnoreBasicDataParam;
 import com.webank.blockchain.data.export.common.tools.DateUtils;
 import com.webank.blockchain.data.export.common.tools.JacksonUtils;
-import com.webank.blockchain.data.export.common.tools.MethodUtils;
 import com.webank.blockchain.data.export.parser.service.TransactionService;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.fisco.bcos.sdk.client.protocol.model.JsonTransactionResponse;
 import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.Block;
-import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.TransactionObject;
-import org.fisco.bcos.sdk.client.protocol.response.BcosBlock.TransactionResult;
 import org.fisco.bcos.sdk.model.TransactionReceipt;
-import org.fisco.bcos.sdk.transaction.codec.decode.TransactionDecoderInterface;
-import org.fisco.bcos.sdk.transaction.model.dto.TransactionResponse;
+import org.fisco.bcos.sdk.transaction.tools.JsonUtils;
 import org.fisco.bcos.sdk.utils.Numeric;
 
 import java.io.IOException;
@@ -63,19 +64,16 @@ public class MethodCrawlerHandler {
 
 
     @SuppressWarnings({ "rawtypes", "unchecked" })
-    public static BlockMethodInfo crawl(Block block, Map<String, String> txHashContractAddressMapping) throws IOException {
+    public static BlockMethodInfo crawl(BlockBundle bundle, Map<String, String> txHashContractAddressMapping) throws IOException {
+        Block block = bundle.getBlock();
         BlockMethodInfo blockMethodInfo = new BlockMethodInfo();
         List<BlockTxDetailInfoBO> blockTxDetailInfoList = new ArrayList<>();
         List<TxRawDataBO> txRawDataBOList = new ArrayList<>();
         List<TxReceiptRawDataBO> txReceiptRawDataBOList = new ArrayList<>();
         List<MethodBO> methodInfoList = new ArrayList();
-        List<TransactionResult> transactionResults = block.getTransactions();
         Map<String, String> txHashContractNameMapping = new HashMap<>();
-        for (TransactionResult result : transactionResults) {
-            TransactionObject to = (TransactionObject) result;
-            JsonTransactionResponse transaction = to.get();
-            Optional<TransactionReceipt> opt = ExportConstant.getCurrentContext().getClient()
-                    .getTransactionReceipt(transaction.getHash()).getTransactionReceipt();
+        for (JsonTransactionResponse transaction : bundle.getTransactions().values()) {
+            Optional<TransactionReceipt> opt = bundle.getReceipt(transaction.getHash());
             String contractAddress = "";
             if (opt.isPresent()) {
                 TransactionReceipt receipt = opt.get();
@@ -123,12 +121,28 @@ public class MethodCrawlerHandler {
 
     public static MethodBO parseMethod(Block block, MethodMetaInfo methodMetaInfo, TransactionReceipt receipt,
                                        String abi, String contractAddress){
-        TransactionDecoderInterface decoder = ExportConstant.getCurrentContext().getDecoder();
         ExportConfig config = ExportConstant.getCurrentContext().getConfig();
         MethodBO methodBO = null;
         try {
-            List<Object> params = MethodUtils.decodeMethodInput(abi, methodMetaInfo.getOriginName(), receipt,
-                    ExportConstant.getCurrentContext().getClient());
+            ContractCodec codec = ContractConstants.getCurrentContractMaps().getContractBinaryMap()
+                    .get(ExportConstant.getCurrentContext().getContractInfoMap()
+                            .get(methodMetaInfo.getContractName()).getBinary()).getContractCodec();
+            boolean withReturns = !CollectionUtil.isEmpty(methodMetaInfo.getOutputList());
+            if (withReturns && !receipt.isStatusOK()) {
+                log.warn("tx {} failed with status {}, no return value is decoded", receipt.getTransactionHash(),
+                        receipt.getStatus());
+                withReturns = false;
+            }
+            ContractCodec.MethodValues values;
+            if (StringUtils.equals(methodMetaInfo.getOriginName(), "constructor")) {
+                String code = ExportConstant.getCurrentContext().getClient().getCode(receipt.getContractAddress());
+                values = new ContractCodec.MethodValues(codec.decodeConstructorInput(receipt.getInput(), code), null);
+            } else {
+                // the selector tells the overload, which methodIdMap keys with the contract name
+                values = codec.decodeMethod(StringUtils.substringBefore(methodMetaInfo.getMethodId(), "_"),
+                        receipt.getInput(), withReturns ? receipt.getOutput() : null);
+            }
+            List<Object> params = values.getParams();
             if(CollectionUtil.isEmpty(params)) {
                 return null;
             }
@@ -142,10 +156,13 @@ public class MethodCrawlerHandler {
             methodBO.setEntity(entity);
             methodBO.setToAddress(receipt.getTo());
             methodBO.setTable(TableSQL.getTableName(methodMetaInfo.getContractName(), methodMetaInfo.getMethodName() + "_method"));
-            TransactionResponse response;
             if (!CollectionUtil.isEmpty(methodMetaInfo.getOutputList())) {
-                response = decoder.decodeReceiptWithValues(abi, methodMetaInfo.getOriginName(), receipt);
-                List<Object> returns = response.getValuesList();
+                if (values.getReturns() == null) {
+                    return methodBO;
+                }
+                // the values go through json as the receipt decoder returned them, to keep their types
+                List<Object> returns = JsonUtils.fromJson(JsonUtils.toJson(values.getReturns()),
+                        new TypeReference<List<Object>>() {});
                 int i = 0;
                 for (FieldVO fieldVO : methodMetaInfo.getOutputList()) {
                     if (CollectionUtil.isNotEmpty(config.getIgnoreParam())
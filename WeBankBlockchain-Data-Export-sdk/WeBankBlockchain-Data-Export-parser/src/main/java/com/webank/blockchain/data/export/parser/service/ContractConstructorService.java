@@ -15,17 +15,15 @@
  */
 package com.webank.blockchain.data.export.parser.service;
 
-import cn.hutool.core.util.HexUtil;
+import com.webank.blockchain.data.export.common.bo.contract.ContractCodeIndex;
 import com.webank.blockchain.data.export.common.bo.contract.ContractDetail;
 import com.webank.blockchain.data.export.common.bo.contract.ContractMapsInfo;
-import com.webank.blockchain.data.export.common.constants.BinConstant;
 import com.webank.blockchain.data.export.common.constants.ContractConstants;
+import com.webank.blockchain.data.export.common.entity.ExportConstant;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.StringUtils;
-import org.fisco.bcos.sdk.utils.Hex;
 
-import java.math.BigInteger;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * ContractConstructorService for querying contract constructor name by input.
@@ -49,32 +47,33 @@ public class ContractConstructorService {
         if (contractMapsInfo == null) {
             return null;
         }
-        Map<String, ContractDetail> binaryMap = contractMapsInfo.getContractBinaryMap();
-        for (Map.Entry<String, ContractDetail> entry : binaryMap.entrySet()) {
-            String key = entry.getKey();
-            if(StringUtils.equalsIgnoreCase(key, code)){
-                return entry;
-            }
-            if (code.length() > BinConstant.META_DATA_HASH_LENGTH
-                    && key.length() > BinConstant.META_DATA_HASH_LENGTH) {
-                String hashLengthStr = code.substring(code.length() - 4);
-                if ("0029".equals(hashLengthStr)){
-                    code = code.substring(2, code.length() - 86);
-                }
-                if ("0037".equals(hashLengthStr)){
-                    code = code.substring(2, code.length() - 114);
-                }
-                if (code.contains("a264697066735822")){
-                    code = code.substring(2, code.indexOf("a264697066735822"));
-                }
-            } else {
-                continue;
-            }
-            if (StringUtils.containsIgnoreCase(key, code)) {
-                return entry;
-            }
+        return contractMapsInfo.getContractCodeIndex().match(code);
+    }
+
+    /**
+     * get constuctor name by contract address, the code of an address is got and matched only once.
+     *
+     * @param contractAddress
+     * @return key:contract binary, value:contract name, or null if the code is not found or not registered
+     */
+    public static Map.Entry<String, ContractDetail> getConstructorNameByAddress(String contractAddress) {
+        ContractMapsInfo contractMapsInfo = ContractConstants.getCurrentContractMaps();
+        if (contractMapsInfo == null) {
+            return null;
+        }
+        ContractCodeIndex index = contractMapsInfo.getContractCodeIndex();
+        Optional<Map.Entry<String, ContractDetail>> cached = index.getCachedMatch(contractAddress);
+        if (cached != null) {
+            return cached.orElse(null);
+        }
+        String code = ExportConstant.getCurrentContext().getClient().getCode(contractAddress);
+        if (code == null) {
+            log.warn("contract:{} code can't be find", contractAddress);
+            return null;
         }
-        return null;
+        Map.Entry<String, ContractDetail> entry = index.match(code);
+        index.cacheMatch(contractAddress, entry);
+        return entry;
     }
 
 }
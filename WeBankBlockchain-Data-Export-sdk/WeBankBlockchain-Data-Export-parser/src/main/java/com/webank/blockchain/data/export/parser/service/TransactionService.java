@@ -17,7 +17,6 @@ import com.webank.blockchain.data.export.common.bo.contract.ContractDetail;
 import com.webank.blockchain.data.export.common.bo.contract.ContractMapsInfo;
 import com.webank.blockchain.data.export.common.bo.contract.MethodMetaInfo;
 import com.webank.blockchain.data.export.common.constants.ContractConstants;
-import com.webank.blockchain.data.export.common.entity.ExportConstant;
 import com.webank.blockchain.data.export.common.tools.JacksonUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
@@ -60,15 +59,7 @@ public class TransactionService {
                     transaction.getBlockNumber());
             return Optional.empty();
         }
-        String input = ExportConstant.getCurrentContext().getClient().getCode(contractAddress);
-        if (input == null) {
-            log.warn(
-                    "block:{} contract:{} code can't be find",
-                    transaction.getBlockNumber(),contractAddress);
-            return Optional.empty();
-        }
-        log.debug("code: {}", JacksonUtils.toJson(input));
-        Map.Entry<String, ContractDetail> contractEntry = ContractConstructorService.getConstructorNameByCode(input);
+        Map.Entry<String, ContractDetail> contractEntry = ContractConstructorService.getConstructorNameByAddress(contractAddress);
         if (contractEntry == null) {
             log.warn(
                     "block:{} constructor code can't be find, maybe the contract is not registered! See the DIR of contractPath.",
@@ -0,0 +1,75 @@
+package com.webank.blockchain.data.export.sdk.test;
+
+import com.webank.blockchain.data.export.common.client.BlockNotifier;
+import com.webank.blockchain.data.export.task.BlockNotifyWaiter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+public class BlockNotifyWaiterTest {
+
+    @Test
+    public void wakeUpOnNewBlock() throws Exception {
+        FakeBlockNotifier notifier = new FakeBlockNotifier();
+        BlockNotifyWaiter waiter = BlockNotifyWaiter.create(notifier);
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                return;
+            }
+            notifier.push(10);
+            notifier.push(11);
+        });
+        producer.start();
+        long start = System.nanoTime();
+        Assert.assertTrue(waiter.await(10, 10, TimeUnit.SECONDS));
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        producer.join();
+        waiter.close();
+        Assert.assertNull(notifier.listener);
+    }
+
+    @Test
+    public void returnAtOnceIfAlreadyNotified() throws Exception {
+        FakeBlockNotifier notifier = new FakeBlockNotifier();
+        BlockNotifyWaiter waiter = BlockNotifyWaiter.create(notifier);
+        notifier.push(20);
+        Assert.assertTrue(waiter.await(19, 0, TimeUnit.SECONDS));
+        Assert.assertFalse(waiter.await(20, 50, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void pollingWithoutNotifier() throws Exception {
+        BlockNotifyWaiter waiter = BlockNotifyWaiter.create(null);
+        Assert.assertFalse(waiter.isPushEnabled());
+        long start = System.nanoTime();
+        Assert.assertFalse(waiter.await(0, 100, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        waiter.close();
+    }
+
+    private static class FakeBlockNotifier implements BlockNotifier {
+
+        private volatile LongConsumer listener;
+
+        @Override
+        public void subscribe(LongConsumer listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void unsubscribe() {
+            listener = null;
+        }
+
+        private void push(long blockHeight) {
+            LongConsumer current = listener;
+            if (current != null) {
+                current.accept(blockHeight);
+            }
+        }
+    }
+}
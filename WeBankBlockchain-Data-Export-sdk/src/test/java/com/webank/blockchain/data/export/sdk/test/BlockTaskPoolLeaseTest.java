@@ -0,0 +1,150 @@
+package com.webank.blockchain.data.export.sdk.test;
+
+import cn.hutool.db.DaoTemplate;
+import cn.hutool.db.Db;
+import cn.hutool.db.ds.simple.SimpleDataSource;
+import com.webank.blockchain.data.export.common.bo.data.BlockRange;
+import com.webank.blockchain.data.export.common.entity.DataExportContext;
+import com.webank.blockchain.data.export.common.entity.ExportConfig;
+import com.webank.blockchain.data.export.common.entity.ExportConstant;
+import com.webank.blockchain.data.export.common.entity.TableSQL;
+import com.webank.blockchain.data.export.common.enums.TxInfoStatusEnum;
+import com.webank.blockchain.data.export.common.tools.BlockRangeUtils;
+import com.webank.blockchain.data.export.db.entity.BlockTaskPool;
+import com.webank.blockchain.data.export.db.repository.BlockTaskPoolRepository;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class BlockTaskPoolLeaseTest {
+
+    private static final short INIT = (short) TxInfoStatusEnum.INIT.getStatus();
+    private static final short DONE = (short) TxInfoStatusEnum.DONE.getStatus();
+
+    private BlockTaskPoolRepository repository;
+
+    @Before
+    public void setUp() throws Exception {
+        SimpleDataSource dataSource = new SimpleDataSource(
+                "jdbc:h2:mem:task" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        Db.use(dataSource).execute(
+                TableSQL.BLOCK_TASK_POOL.substring(0, TableSQL.BLOCK_TASK_POOL.indexOf("ENGINE")));
+        DataExportContext context = new DataExportContext();
+        context.setDataSource(dataSource);
+        context.setConfig(new ExportConfig());
+        ExportConstant.setCurrentContext(context);
+        repository = new BlockTaskPoolRepository(new DaoTemplate("block_task_pool", dataSource), "block_task_pool");
+    }
+
+    @Test
+    public void consecutiveLeasesAreDisjoint() {
+        prepare(0, 9, INIT);
+        repository.setSyncStatusByBlockHeight(DONE, new Date(), 1);
+        List<BlockTaskPool> first = lease(range(0, 9), 0, new Date(1000), 3);
+        List<BlockTaskPool> second = lease(range(0, 9), 0, new Date(2000), 3);
+        Assert.assertEquals(heights(0, 2, 3), heights(first));
+        Assert.assertEquals(heights(4, 5, 6), heights(second));
+    }
+
+    @Test
+    public void statusIsOnlyWrittenWhileLeaseIsHeld() {
+        prepare(0, 3, INIT);
+        Date leaseTime = new Date(1000);
+        List<BlockTaskPool> tasks = lease(range(0, 3), 0, leaseTime, 4);
+        Assert.assertEquals(4, tasks.size());
+        Assert.assertTrue(repository.setSyncStatusByBlockHeightAndLease(DONE, new Date(), 0, 0, leaseTime));
+        Assert.assertFalse(repository.setSyncStatusByBlockHeightAndLease(DONE, new Date(), 0, 0, leaseTime));
+
+        // the timeout check hands block 1 over, and item 1 leases it again
+        repository.setSyncStatusByBlockHeight(INIT, new Date(), 1);
+        Date newLeaseTime = new Date(2000);
+        Assert.assertEquals(heights(1), heights(lease(range(0, 3), 1, newLeaseTime, 4)));
+        Assert.assertFalse(repository.setSyncStatusByBlockHeightAndLease(DONE, new Date(), 1, 0, leaseTime));
+        Assert.assertTrue(repository.setSyncStatusByBlockHeightAndLease(DONE, new Date(), 1, 1, newLeaseTime));
+        Assert.assertEquals(DONE, repository.findByBlockHeight(1).getSyncStatus());
+    }
+
+    @Test
+    public void leaseOwnSegmentsByRanges() {
+        prepare(0, 13, INIT);
+        repository.setSyncStatusByBlockHeight(DONE, new Date(), 1);
+        List<BlockRange> item0 = BlockRangeUtils.segments(0, 11, 4, 2, 0, 10);
+        List<BlockRange> item1 = BlockRangeUtils.segments(0, 11, 4, 2, 1, 10);
+        Assert.assertEquals(Arrays.asList(new BlockRange(0, 3), new BlockRange(8, 11)), item0);
+        Assert.assertEquals(Collections.singletonList(new BlockRange(4, 7)), item1);
+        Assert.assertEquals(Collections.singletonList(new BlockRange(9, 11)),
+                BlockRangeUtils.segments(9, 13, 4, 2, 0, 1));
+        Assert.assertEquals(7, repository.countBySyncStatusAndBlockHeightRanges(INIT, item0));
+
+        Assert.assertEquals(heights(0, 2, 3, 8, 9), heights(lease(item0, 0, new Date(1000), 5)));
+        Assert.assertEquals(heights(4, 5, 6, 7), heights(lease(item1, 1, new Date(1000), 5)));
+        Assert.assertEquals(2, repository.countBySyncStatusAndBlockHeightRanges(INIT, item0));
+        Assert.assertEquals(0, repository.countBySyncStatusAndBlockHeightRanges(INIT, item1));
+        Assert.assertEquals(Long.valueOf(10), repository.findMinBlockHeightBySyncStatus(INIT).orElse(null));
+    }
+
+    @Test
+    public void stealSegmentsOfPeer() {
+        prepare(0, 15, INIT);
+        List<BlockRange> item0 = BlockRangeUtils.segments(0, 15, 4, 2, 0, 10);
+        List<BlockRange> item1 = BlockRangeUtils.segments(0, 15, 4, 2, 1, 10);
+        Assert.assertEquals(heights(4, 5, 6, 7), heights(lease(item1, 1, new Date(1000), 4)));
+        Assert.assertEquals(4, repository.countBySyncStatusAndBlockHeightRanges(INIT, item1));
+
+        // item 0 is idle and steals from the backlog of item 1
+        Date leaseTime = new Date(2000);
+        List<BlockTaskPool> stolen = lease(item1, 0, leaseTime, 3);
+        Assert.assertEquals(heights(12, 13, 14), heights(stolen));
+        stolen.forEach(task -> Assert.assertEquals(0, task.getHandleItem()));
+        Assert.assertEquals(1, repository.countBySyncStatusAndBlockHeightRanges(INIT, item1));
+        Assert.assertEquals(8, repository.countBySyncStatusAndBlockHeightRanges(INIT, item0));
+        Assert.assertTrue(repository.setSyncStatusByBlockHeightAndLease(DONE, new Date(), 12, 0, leaseTime));
+    }
+
+    @Test
+    public void saveAllKeepsExistingRows() {
+        prepare(0, 2, INIT);
+        repository.setSyncStatusByBlockHeight(DONE, new Date(), 1);
+        prepare(0, 4, INIT);
+        Assert.assertEquals(5, repository.countByBlockHeightRange(0, 4));
+        Assert.assertEquals(DONE, repository.findByBlockHeight(1).getSyncStatus());
+        Assert.assertEquals(INIT, repository.findByBlockHeight(4).getSyncStatus());
+    }
+
+    private List<BlockTaskPool> lease(List<BlockRange> ranges, int handleItem, Date leaseTime, int limit) {
+        return repository.leaseBySyncStatusAndBlockHeightRangesOrderByBlockHeightLimit(INIT, ranges, handleItem,
+                leaseTime, limit);
+    }
+
+    private static List<BlockRange> range(long from, long to) {
+        return Collections.singletonList(new BlockRange(from, to));
+    }
+
+    private void prepare(long from, long to, short syncStatus) {
+        List<BlockTaskPool> tasks = new ArrayList<>();
+        for (long height = from; height <= to; height++) {
+            tasks.add(new BlockTaskPool().setBlockHeight(height).setSyncStatus(syncStatus)
+                    .setDepotUpdatetime(new Date()));
+        }
+        repository.saveAll(tasks);
+    }
+
+    private static List<Long> heights(List<BlockTaskPool> tasks) {
+        return tasks.stream().map(BlockTaskPool::getBlockHeight).collect(Collectors.toList());
+    }
+
+    private static List<Long> heights(long... heights) {
+        List<Long> result = new ArrayList<>();
+        for (long height : heights) {
+            result.add(height);
+        }
+        return result;
+    }
+}
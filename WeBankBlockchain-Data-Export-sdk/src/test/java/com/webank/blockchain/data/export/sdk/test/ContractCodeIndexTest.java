@@ -0,0 +1,95 @@
+package com.webank.blockchain.data.export.sdk.test;
+
+import com.webank.blockchain.data.export.common.bo.contract.ContractCodeIndex;
+import com.webank.blockchain.data.export.common.bo.contract.ContractDetail;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+public class ContractCodeIndexTest {
+
+    private static final String CONSTRUCTOR = "608060405234801561001057600080fd5b50610150806100206000396000f300";
+    private static final String RUNTIME = "6080604052600436106100405763ffffffff7c01000000000000000000000000"
+            + "60003504166360fe47b1811461004557806361bc221a1461005f575b600080fd5b34801561005157600080fd5b50";
+    private static final String OTHER_RUNTIME = "6080604052348015600f57600080fd5b506004361060285760003560e01c80"
+            + "63a9059cbb14602d575b600080fd5b60336035565b005b56fe";
+    private static final String BZZR0 = "a165627a7a72305820";
+    private static final String BZZR0_EXPERIMENTAL = "a265627a7a72305820";
+    private static final String EXPERIMENTAL = "6c6578706572696d656e74616cf5";
+
+    private ContractDetail token;
+    private ContractDetail vault;
+    private ContractDetail plain;
+    private ContractCodeIndex index;
+
+    @Before
+    public void setUp() {
+        token = new ContractDetail();
+        vault = new ContractDetail();
+        plain = new ContractDetail();
+        Map<String, ContractDetail> binaries = new HashMap<>();
+        binaries.put("0x" + CONSTRUCTOR + RUNTIME + BZZR0 + hash('1') + "0029", token);
+        binaries.put(CONSTRUCTOR + "00" + RUNTIME + "00" + BZZR0_EXPERIMENTAL + hash('2') + EXPERIMENTAL + "0037",
+                vault);
+        binaries.put(CONSTRUCTOR + OTHER_RUNTIME, plain);
+        index = new ContractCodeIndex(binaries);
+    }
+
+    @Test
+    public void matchRuntimeWithOtherMetadata() {
+        Assert.assertSame(token, index.match("0x" + RUNTIME + BZZR0 + hash('a') + "0029").getValue());
+        Assert.assertSame(token, index.match(RUNTIME.toUpperCase() + BZZR0 + hash('b') + "0029").getValue());
+        Assert.assertSame(vault, index.match(RUNTIME + "00" + BZZR0_EXPERIMENTAL + hash('c') + EXPERIMENTAL
+                + "0037").getValue());
+    }
+
+    @Test
+    public void keepTrailerWithoutMapHeader() {
+        // the length fits, but the byte it points to is no CBOR map of 1 to 5 entries, so nothing is stripped
+        String trailer = "ff65627a7a72305820";
+        Assert.assertNull(index.match(RUNTIME + trailer + hash('d') + "0029"));
+        Assert.assertNull(index.match(RUNTIME + "a6" + trailer.substring(2) + hash('d') + "0029"));
+    }
+
+    @Test
+    public void matchCodeWithoutMetadata() {
+        Assert.assertSame(plain, index.match(OTHER_RUNTIME).getValue());
+        Assert.assertNull(index.match(OTHER_RUNTIME + "00"));
+    }
+
+    @Test
+    public void malformedCodeMatchesNothing() {
+        Assert.assertNull(index.match(""));
+        Assert.assertNull(index.match("0x"));
+        Assert.assertNull(index.match("0x00"));
+        Assert.assertNull(index.match("0xzzzz"));
+        Assert.assertNull(index.match(RUNTIME + "zz29"));
+        Assert.assertNull(index.match(BZZR0 + hash('e') + "00ff"));
+    }
+
+    @Test
+    public void cacheUnregisteredAddress() {
+        String address = "0x5B38Da6a701c568545dCfcB03FcB875f56beddC4";
+        Assert.assertNull(index.getCachedMatch(address));
+        index.cacheMatch(address, null);
+        Optional<Map.Entry<String, ContractDetail>> cached = index.getCachedMatch(address.toLowerCase());
+        Assert.assertNotNull(cached);
+        Assert.assertFalse(cached.isPresent());
+
+        String registered = "0x0000000000000000000000000000000000000001";
+        index.cacheMatch(registered, index.match(OTHER_RUNTIME));
+        Assert.assertSame(plain, index.getCachedMatch(registered).get().getValue());
+    }
+
+    private static String hash(char c) {
+        StringBuilder hash = new StringBuilder();
+        for (int i = 0; i < 64; i++) {
+            hash.append(c);
+        }
+        return hash.toString();
+    }
+}
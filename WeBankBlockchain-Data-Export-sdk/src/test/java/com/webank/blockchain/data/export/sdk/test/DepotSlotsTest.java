@@ -0,0 +1,82 @@
+package com.webank.blockchain.data.export.sdk.test;
+
+import cn.hutool.db.Db;
+import cn.hutool.db.ds.simple.SimpleDataSource;
+import com.webank.blockchain.data.export.common.entity.DataExportContext;
+import com.webank.blockchain.data.export.common.entity.ExportConfig;
+import com.webank.blockchain.data.export.common.entity.ExportConstant;
+import com.webank.blockchain.data.export.common.entity.TableSQL;
+import com.webank.blockchain.data.export.db.repository.ExportLeaseRepository;
+import com.webank.blockchain.data.export.task.DepotSlots;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class DepotSlotsTest {
+
+    private static final String OWNER = "instance-a";
+
+    private DataExportContext context;
+
+    private ExportLeaseRepository leases;
+
+    @Before
+    public void setUp() throws Exception {
+        SimpleDataSource dataSource = new SimpleDataSource(
+                "jdbc:h2:mem:slot" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        Db.use(dataSource).execute(TableSQL.EXPORT_LEASE.substring(0, TableSQL.EXPORT_LEASE.indexOf("ENGINE")));
+        context = new DataExportContext();
+        context.setDataSource(dataSource);
+        context.setConfig(new ExportConfig());
+        ExportConstant.setCurrentContext(context);
+        leases = new ExportLeaseRepository("export_lease");
+    }
+
+    @Test
+    public void workersOfAnInstanceTakeDistinctSlots() throws Exception {
+        DepotSlots slots = DepotSlots.create(2);
+        CountDownLatch ready = new CountDownLatch(2);
+        ExecutorService workers = Executors.newFixedThreadPool(2);
+        try {
+            Callable<Integer> worker = () -> {
+                ExportConstant.setCurrentContext(context);
+                ready.countDown();
+                ready.await();
+                return slots.claim(this::acquire);
+            };
+            Future<Integer> first = workers.submit(worker);
+            Future<Integer> second = workers.submit(worker);
+            int slot0 = first.get();
+            int slot1 = second.get();
+            Assert.assertTrue(slot0 >= 0 && slot1 >= 0);
+            Assert.assertNotEquals(slot0, slot1);
+            Assert.assertEquals(-1, slots.claim(this::acquire));
+
+            // the first worker gives its slot up, the lease of the second one is still held by the instance
+            leases.release(slotLease(slot0), OWNER);
+            slots.unclaim(slot0);
+            long now = System.currentTimeMillis();
+            Assert.assertFalse(leases.tryAcquire(slotLease(slot1), "instance-b", new Date(now),
+                    new Date(now + 30000)));
+            Assert.assertEquals(slot0, slots.claim(this::acquire));
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private boolean acquire(int slot) {
+        long now = System.currentTimeMillis();
+        return leases.tryAcquire(slotLease(slot), OWNER, new Date(now), new Date(now + 30000));
+    }
+
+    private static String slotLease(int slot) {
+        return "depot-slot-" + slot;
+    }
+}
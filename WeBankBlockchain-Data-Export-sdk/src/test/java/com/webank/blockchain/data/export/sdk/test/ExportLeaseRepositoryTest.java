@@ -0,0 +1,50 @@
+package com.webank.blockchain.data.export.sdk.test;
+
+import cn.hutool.db.Db;
+import cn.hutool.db.ds.simple.SimpleDataSource;
+import com.webank.blockchain.data.export.common.entity.DataExportContext;
+import com.webank.blockchain.data.export.common.entity.ExportConfig;
+import com.webank.blockchain.data.export.common.entity.ExportConstant;
+import com.webank.blockchain.data.export.common.entity.TableSQL;
+import com.webank.blockchain.data.export.db.repository.ExportLeaseRepository;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+
+public class ExportLeaseRepositoryTest {
+
+    private ExportLeaseRepository leases;
+
+    @Before
+    public void setUp() throws Exception {
+        SimpleDataSource dataSource = new SimpleDataSource(
+                "jdbc:h2:mem:lease" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        Db.use(dataSource).execute(TableSQL.EXPORT_LEASE.substring(0, TableSQL.EXPORT_LEASE.indexOf("ENGINE")));
+        DataExportContext context = new DataExportContext();
+        context.setDataSource(dataSource);
+        context.setConfig(new ExportConfig());
+        ExportConstant.setCurrentContext(context);
+        leases = new ExportLeaseRepository("export_lease");
+    }
+
+    @Test
+    public void onlyOneOwnerHoldsLease() {
+        long now = System.currentTimeMillis();
+        Assert.assertTrue(leases.tryAcquire("leader", "a", new Date(now), new Date(now + 30000)));
+        Assert.assertFalse(leases.tryAcquire("leader", "b", new Date(now), new Date(now + 30000)));
+        Assert.assertTrue(leases.tryAcquire("leader", "a", new Date(now + 1000), new Date(now + 31000)));
+        Assert.assertTrue(leases.tryAcquire("slot-0", "b", new Date(now), new Date(now + 30000)));
+    }
+
+    @Test
+    public void takeOverExpiredOrReleasedLease() {
+        long now = System.currentTimeMillis();
+        Assert.assertTrue(leases.tryAcquire("leader", "a", new Date(now), new Date(now + 30000)));
+        Assert.assertTrue(leases.tryAcquire("leader", "b", new Date(now + 30001), new Date(now + 60000)));
+        Assert.assertFalse(leases.tryAcquire("leader", "a", new Date(now + 30002), new Date(now + 60000)));
+        leases.release("leader", "b");
+        Assert.assertTrue(leases.tryAcquire("leader", "a", new Date(now + 30003), new Date(now + 60000)));
+    }
+}
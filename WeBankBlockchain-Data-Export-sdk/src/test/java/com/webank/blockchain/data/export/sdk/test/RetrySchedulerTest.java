@@ -0,0 +1,70 @@
+package com.webank.blockchain.data.export.sdk.test;
+
+import com.webank.blockchain.data.export.common.entity.ExportConfig;
+import com.webank.blockchain.data.export.common.entity.RetryScheduler;
+import com.webank.blockchain.data.export.common.entity.RetryScheduler.Decision;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class RetrySchedulerTest {
+
+    private ExportConfig config;
+
+    private RetryScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        config = new ExportConfig();
+        config.setMaxRetryCount(3);
+        config.setRetryBaseSeconds(10);
+        config.setRetryMaxSeconds(25);
+        scheduler = new RetryScheduler();
+    }
+
+    @Test
+    public void backoffDoublesWithJitterUpToMax() {
+        config.setMaxRetryCount(5);
+        long now = 0;
+        Assert.assertEquals(Decision.RETRY, scheduler.schedule(1, config, now));
+        // first delay is within [5s, 10s]
+        Assert.assertEquals(Decision.WAIT, scheduler.schedule(1, config, now + 4999));
+        now += 10000;
+        Assert.assertEquals(Decision.RETRY, scheduler.schedule(1, config, now));
+        // second delay is within [10s, 20s]
+        Assert.assertEquals(Decision.WAIT, scheduler.schedule(1, config, now + 9999));
+        now += 20000;
+        Assert.assertEquals(Decision.RETRY, scheduler.schedule(1, config, now));
+        // third delay is capped at 25s, within [12.5s, 25s]
+        Assert.assertEquals(Decision.WAIT, scheduler.schedule(1, config, now + 12499));
+        Assert.assertEquals(3, scheduler.getRetryCount());
+        Assert.assertEquals(1, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void deadLetterAfterMaxRetries() {
+        long now = 0;
+        for (int i = 0; i < config.getMaxRetryCount(); i++) {
+            Assert.assertEquals(Decision.RETRY, scheduler.schedule(1, config, now));
+            now += config.getRetryMaxSeconds() * 1000;
+        }
+        Assert.assertEquals(Decision.DEAD_LETTER, scheduler.schedule(1, config, now));
+        Assert.assertEquals(1, scheduler.getDeadLetterCount());
+        Assert.assertEquals(0, scheduler.getPendingCount());
+        // a dead letter reset by hand starts over
+        Assert.assertEquals(Decision.RETRY, scheduler.schedule(1, config, now));
+    }
+
+    @Test
+    public void successForgetsAttempts() {
+        Assert.assertEquals(Decision.RETRY, scheduler.schedule(1, config, 0));
+        Assert.assertEquals(Decision.RETRY, scheduler.schedule(2, config, 0));
+        scheduler.onSuccess(1);
+        Assert.assertEquals(Collections.singleton(2L), scheduler.getPendingHeights());
+        scheduler.onSuccess(Collections.singletonList(2L));
+        Assert.assertEquals(0, scheduler.getPendingCount());
+        Assert.assertEquals(Decision.RETRY, scheduler.schedule(1, config, 0));
+    }
+}